@@ -2,14 +2,28 @@ package mlsim.console;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import jdk.jfr.FlightRecorder;
 
 import mlsim.gui.Gui;
+import mlsim.simulation.AgentStatistics;
+import mlsim.simulation.CollisionBackend;
 import mlsim.simulation.Entity;
+import mlsim.simulation.Layout;
+import mlsim.simulation.Replay;
 import mlsim.simulation.Results;
+import mlsim.simulation.ResultsAccumulator;
 import mlsim.simulation.Simulation;
 import mlsim.simulation.SimulationFactory;
+import mlsim.simulation.SimulationMetrics;
+import mlsim.simulation.SimulationPool;
+import mlsim.simulation.SimulationState;
+import mlsim.simulation.StepMode;
 import mlsim.solution.GARandomFactory;
 import mlsim.solution.GeneticAlgorithm;
 import mlsim.wrapper.GAWrapper;
@@ -104,16 +118,31 @@ class Commands {
 		addCommand(new Command("exit", "Exits the application.", this::exit, "exit"));
 		addCommand(new Command("run simulation", "Runs a single simulation if simulation factory was set.", this::runSim, "run", "r"));
 		addCommand(new Command("set parameters", "Sets simulation parameters for new simulations.", this::setSimulationParameters, "set", "se"));
+		addCommand(new Command("mode [sequential|simultaneous [shards]]", "Sets how agents move in new simulations: one by one or all at once (in parallel, with the plane cut into shards).", this::setStepMode, "mode"));
+		addCommand(new Command("regrowth food-per-step", "Sets how many food samples grow back every step in new simulations.", this::setFoodRegrowth, "regrowth"));
+		addCommand(new Command("limit max-steps", "Stops new simulations after this many steps (0 - no limit).", this::setStepLimit, "limit"));
+		addCommand(new Command("cycles [on|off]", "Stops new simulations when their state repeats.", this::setCycleDetection, "cycles"));
+		addCommand(new Command("macro max-turns", "Lets agents of new simulations far from everything keep their move for up to this many turns without deciding (0 - off, sequential mode only).", this::setMacroSteps, "macro"));
+		addCommand(new Command("backend [auto|dense|sparse]", "Sets how new simulations find collisions: with an index of every cell or only of the occupied ones (for huge, mostly empty planes). 'auto' picks by the size and density of the plane.", this::setCollisionBackend, "backend"));
+		addCommand(new Command("layouts count", "Pre-generates starts of simulations, on which 'batch' evaluates every generation (0 - a random start for every simulation).", this::setLayouts, "layouts"));
+		addCommand(new Command("metrics [on|off]", "Counts events and times the phases of steps in new simulations (printed by 'steps' and 'batch').", this::setMetrics, "metrics"));
+		addCommand(new Command("stats [on|off]", "Records what every agent of new simulations did and how it died (printed by 'results' after 'run' or 'finish').", this::setAgentStatistics, "stats"));
 		addCommand(new Command("initialize population [minSize] [maxSize] [populationSize]", "Initializes a random population of size populationSize with GAs with size between minSize and maxSize.", this::initializePopulation, "initialize", "init", "i"));
 		addCommand(new Command("results", "Prints the results.", this::printResults, "results", "res", "r"));
 		addCommand(new Command("update", "Updates the population using the current selector.", this::updatePopulation, "update", "upd"));
 		addCommand(new Command("selector [bob] (selector parameters)*", "Sets the selector to the current one.", this::setSelector, "selector", "sel"));
 		addCommand(new Command("batch num-rounds sims-per-round","Batch training.", this::batch, "batch"));
+		addCommand(new Command("seed number", "Sets the master seed, from which every random number is derived.", this::seed, "seed"));
+		addCommand(new Command("threads num-threads","Sets how many simulations of a batch round run at the same time.", this::threads, "threads"));
 		addCommand(new Command("save file-name", "Saves the current population with this file-name.", this::save, "save"));
 		addCommand(new Command("load file-name", "Loads the population with this file-name.", this::load, "load"));
+		addCommand(new Command("checkpoint file-name", "Saves the active simulation with this file-name.", this::checkpoint, "checkpoint", "ckpt"));
+		addCommand(new Command("resume file-name", "Resumes a saved simulation of the current population.", this::resume, "resume"));
 		
 		addCommand(new Command("step", "Steps through the simulation.", this::step, "step", "s"));
 		addCommand(new Command("full", "Prints hole a simulation map.", this::full, "full"));
+		addCommand(new Command("record", "Records the moves of the active simulation from now on.", this::record, "record", "rec"));
+		addCommand(new Command("replay [step]", "Prints the map of the recorded simulation at this step, or opens the gui without a step.", this::replay, "replay"));
 		addCommand(new Command("end", "Ends a simulation and saving a simulation results.", this::end, "end"));
 		addCommand(new Command("finish", "Finish the simulation and save the results. ", this::finish, "finish", "fin"));
 		addCommand(new Command("adp", "Dont use.", this::addPerfect, "adp"));
@@ -161,7 +190,7 @@ class Commands {
 			query.throwError("Simulation parameters not set.");
 		}
 		
-		Simulation sim = context.newSimulation();
+		Simulation sim = newSimulation(query, context);
 		Results<GAWrapper> results = sim.finish();
 		context.addResults(results);
 	}
@@ -177,7 +206,7 @@ class Commands {
 		
 		Results<GAWrapper> results = context.getResults();
 		
-		context.updatePopulation(results.fitness());
+		context.updatePopulation(Arrays.stream(results.fitness()).asDoubleStream().toArray());
 	}
 	
 	 private void initializePopulation(Query query, ConsoleApp context) {
@@ -193,7 +222,7 @@ class Commands {
 		
 		if (populationSize < 1) query.throwError("Population size must be greater than 0.");
 		
-		context.setPopulation(GARandomFactory.generatePopulation(minSize, maxSize, populationSize, GAWrapper.PRE, GAWrapper.POST));
+		context.setPopulation(GARandomFactory.generatePopulation(minSize, maxSize, populationSize, GAWrapper.PRE, GAWrapper.POST, context.splitRandom()));
 	}
 	
 	private void setSimulationParameters(Query query, ConsoleApp context) {
@@ -207,14 +236,132 @@ class Commands {
 		context.setSimulationFactory(simFactory);
 	}
 	
+	private void setStepMode(Query query, ConsoleApp context) {
+		if (context.getSimulationFactory() == null) {
+			query.throwError("Simulation parameters not set.");
+		}
+		
+		String mode = query.consume("sequential", "seq", "simultaneous", "sim");
+		
+		if (mode.startsWith("seq")) {
+			context.getSimulationFactory().setStepMode(StepMode.SEQUENTIAL);
+		} else {
+			context.getSimulationFactory().setStepMode(StepMode.SIMULTANEOUS);
+			
+			// Optional number of shards.
+			if (!query.isAtEnd()) {
+				int shards = query.consumeInt();
+				if (shards < 1) query.throwError("Number of shards must be at least 1.");
+				
+				context.getSimulationFactory().setShards(shards);
+			}
+		}
+	}
+	
+	private void setCollisionBackend(Query query, ConsoleApp context) {
+		if (context.getSimulationFactory() == null) {
+			query.throwError("Simulation parameters not set.");
+		}
+		
+		String backend = query.consume("auto", "dense", "sparse");
+		context.getSimulationFactory().setCollisionBackend(CollisionBackend.valueOf(backend.toUpperCase()));
+	}
+	
+	private void setFoodRegrowth(Query query, ConsoleApp context) {
+		if (context.getSimulationFactory() == null) {
+			query.throwError("Simulation parameters not set.");
+		}
+		
+		double regrowth = query.consumeDouble();
+		if (!(regrowth >= 0)) query.throwError("Food regrowth cannot be negative.");
+		
+		context.getSimulationFactory().setFoodRegrowth(regrowth);
+	}
+
+	private void setStepLimit(Query query, ConsoleApp context) {
+		if (context.getSimulationFactory() == null) {
+			query.throwError("Simulation parameters not set.");
+		}
+		
+		int maxSteps = query.consumeInt();
+		if (maxSteps < 0) query.throwError("Step limit cannot be negative.");
+		
+		context.getSimulationFactory().setMaxSteps(maxSteps);
+	}
+
+	private void setCycleDetection(Query query, ConsoleApp context) {
+		if (context.getSimulationFactory() == null) {
+			query.throwError("Simulation parameters not set.");
+		}
+		
+		String on = query.consume("on", "off");
+		context.getSimulationFactory().setCycleDetection(on.equals("on"));
+	}
+	
+	private void setMacroSteps(Query query, ConsoleApp context) {
+		if (context.getSimulationFactory() == null) {
+			query.throwError("Simulation parameters not set.");
+		}
+		
+		int maxTurns = query.consumeInt();
+		if (maxTurns < 0) query.throwError("Macro-steps cannot be negative.");
+		
+		context.getSimulationFactory().setMacroSteps(maxTurns);
+	}
+	
+	private void setLayouts(Query query, ConsoleApp context) {
+		if (context.getSimulationFactory() == null) {
+			query.throwError("Simulation parameters not set.");
+		}
+		
+		if (!context.isPopulationInitialized()) {
+			query.throwError("Population is not initialized.");
+		}
+		
+		int count = query.consumeInt();
+		if (count < 0) query.throwError("Number of layouts cannot be negative.");
+		
+		context.getSimulationFactory().setLayouts(count, context.getPopulation().size(), context.splitRandom());
+	}
+	
+	private void setAgentStatistics(Query query, ConsoleApp context) {
+		if (context.getSimulationFactory() == null) {
+			query.throwError("Simulation parameters not set.");
+		}
+		
+		String on = query.consume("on", "off");
+		context.getSimulationFactory().setAgentStatistics(on.equals("on"));
+	}
+	
+	private void setMetrics(Query query, ConsoleApp context) {
+		if (context.getSimulationFactory() == null) {
+			query.throwError("Simulation parameters not set.");
+		}
+		
+		String on = query.consume("on", "off");
+		context.getSimulationFactory().setMetrics(on.equals("on"));
+	}
+	
 	private void printResults(Query query, ConsoleApp context) {
 		if (context.getResults() == null) query.throwError("No results to display.");
 		
-		List<Integer> fitness = context.getResults().fitness(); 
+		int[] fitness = context.getResults().fitness(); 
+		AgentStatistics statistics = context.getResults().statistics();
 		
-		context.print("id| steps");
-		for (int i = 0; i < fitness.size(); i++) {
-			context.print(i + "| " + fitness.get(i) + "\n");
+		if (statistics == null) {
+			context.print("id| steps");
+			for (int i = 0; i < fitness.length; i++) {
+				context.print(i + "| " + fitness[i] + "\n");
+			}
+			
+			return;
+		}
+		
+		// Results of a single simulation with agent statistics on.
+		context.print("id| steps| meals| kills| distance| random moves| death\n");
+		for (int i = 0; i < fitness.length; i++) {
+			context.print(String.format("%d| %d| %d| %d| %d| %d| %s%n", i, fitness[i], statistics.meals(i), statistics.kills(i),
+					statistics.distance(i), statistics.randomMoves(i), statistics.death(i)));
 		}
 	}
 	
@@ -262,7 +409,7 @@ class Commands {
 	
 	private void step(Query query, ConsoleApp context) {
 		if (!context.hasActiveSimulation()) {
-			Simulation sim = context.newSimulation();
+			Simulation sim = newSimulation(query, context);
 			context.setActiveSimulation(sim);
 		} else {
 			Simulation sim = context.getSimulation();
@@ -277,36 +424,77 @@ class Commands {
 		}
 	}
 	
+	/**
+	 *  Creates a new simulation or stops the command
+	 *  if the parameters do not work with the population. (ex. too much food)
+	 */
+	private static Simulation newSimulation(Query query, ConsoleApp context) {
+		Simulation sim = null;
+		
+		try {
+			sim = context.newSimulation();
+		} catch (IllegalArgumentException e) {
+			query.throwError(e.getMessage());
+		}
+		
+		return sim;
+	}
+	
 	private void end(Query query, ConsoleApp context) {
 		context.removeActiveSimulation();
 	}
 	
-	private static boolean existsAt(List<? extends Entity> entities, int x, int y) {
-		for (Entity e : entities) {
-			if (x == e.getX() && y == e.getY())
-				return true;
+	private void full(Query query, ConsoleApp context) {
+		if (!context.hasActiveSimulation()) {
+			query.throwError("No active simulation.");
 		}
 		
-		return false;
+		printMap(context.getSimulation(), context);
 	}
-	
-	private void full(Query query, ConsoleApp context) {
+
+	private void record(Query query, ConsoleApp context) {
 		if (!context.hasActiveSimulation()) {
-			query.throwError("No active simulation.");
+			query.throwError("No active simulation to record.");
+		}
+		
+		context.startRecording();
+	}
+
+	private void replay(Query query, ConsoleApp context) {
+		if (context.getRecording() == null) {
+			query.throwError("Nothing was recorded.");
+		}
+		
+		Replay replay = new Replay(context.getRecording());
+		
+		if (query.isAtEnd()) {
+			Gui gui = new Gui("Bap", 800, 600, replay);
+			gui.run();
+			return;
 		}
 		
+		int step = query.consumeInt();
+		if (step < 0) query.throwError("Step cannot be negative.");
+		
+		replay.seek(step);
+		context.print("Step " + replay.getPosition() + " of " + replay.getRecording().steps() + ".\n");
+		printMap(replay.getSimulation(), context);
+	}
+
+	/**
+	 *  Prints every cell of the plane: A - agent, F - food.
+	 */
+	private static void printMap(Simulation sim, ConsoleApp context) {
 		StringBuilder builder = new StringBuilder();
-		Simulation sim = context.getSimulation();
 		final int width = sim.getWidth();
 		final int height = sim.getHeight();
-		final List<? extends Entity> agents = sim.getSimulationState().agents();
-		final List<? extends Entity> food = sim.getSimulationState().food();
+		final SimulationState state = sim.getSimulationState();
 		
 		for (int y = 0; y < height; y++) {
 			for (int x = 0; x < width; x++) {
-				if (existsAt(agents, x, y)) {
+				if (state.agentAt(x, y) != null) {
 					builder.append('A');
-				} else if (existsAt(food, x, y)) {
+				} else if (state.foodAt(x, y)) {
 					builder.append('F');
 				} else {
 					builder.append(' ');
@@ -406,6 +594,38 @@ class Commands {
 		}
 	}
 	
+	private void checkpoint(Query query, ConsoleApp context) {
+		if (!context.hasActiveSimulation()) {
+			query.throwError("No active simulation to save.");
+		}
+		
+		String fileName = query.next();
+		
+		try {
+			context.checkpoint(fileName);
+		} catch (IOException e) {
+			query.throwError("There was an error saving this file: " + e.getMessage());
+		}
+	}
+	
+	private void resume(Query query, ConsoleApp context) {
+		if (context.hasActiveSimulation()) {
+			query.throwError("Cannot resume while there is an active simulation.");
+		}
+		
+		if (!context.isPopulationInitialized()) {
+			query.throwError("Population is not initialized.");
+		}
+		
+		String fileName = query.next();
+		
+		try {
+			context.resume(fileName);
+		} catch (IOException e) {
+			query.throwError("There was an error loading this file: " + e.getMessage());
+		}
+	}
+	
 	private void batch(Query query, ConsoleApp context) {
 		
 		if (context.hasActiveSimulation()) {
@@ -435,61 +655,149 @@ class Commands {
 			query.throwError("Number of simulations per round must be greater than 0.");
 		}
 		
+		// The same worlds every round, so there have to be enough of them. (a repeated one tells nothing new)
+		List<Layout> layouts = context.getSimulationFactory().getLayouts();
+		if (!layouts.isEmpty()) {
+			if (simulationsPerRound > layouts.size()) {
+				query.throwError("Only " + layouts.size() + " layouts for " + simulationsPerRound + " simulations per round.");
+			}
+			
+			if (!layouts.get(0).fits(context.getSimulationFactory(), context.getPopulation().size())) {
+				query.throwError("Layouts do not fit the population or parameters. Generate them again with 'layouts'.");
+			}
+		}
+		
+		// Simulations are reused by every thread of the executor for the whole batch.
+		SimulationPool pool = new SimulationPool(context.getSimulationFactory());
 		
 		for (int round = 0; round < trainingRounds; round++) {
 			context.print("ROUND [" + (round+1) + "]: Running... ");
-			List<Integer> fitness = round(context, simulationsPerRound);
+			
+			// Metrics of every simulation of the round, if they're on.
+			SimulationMetrics metrics = context.getSimulationFactory().collectsMetrics() ? new SimulationMetrics() : null;
+			
+			double[] fitness = null;
+			try {
+				fitness = round(context, pool, round + 1, simulationsPerRound, metrics);
+			} catch (ExecutionException e) {
+				query.throwError("A simulation failed: " + e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				query.throwError("Interrupted while waiting for the simulations.");
+			}
+			
 			context.print("Completed!\n");
 			
+			if (metrics != null) {
+				context.print(metrics.toString());
+			}
+			
 			context.updatePopulation(fitness);
 		}
 	}
 	
-	private List<Integer> round(ConsoleApp context, final int simulationsPerRound) {
-		// Oh no, it all looks retarded.
-		List<Integer> fitness = null;
+	/**
+	 *  Runs the simulations of a single round at the same time (on the context's executor)
+	 *  and averages their fitness. Every simulation adds its results as soon as it finishes.
+	 *  The accumulator's sums are exact, so the outcome does not depend on which one finishes first.
+	 *  Simulation i starts from layout i, if the factory has layouts.
+	 *  Metrics of every simulation are added to metrics, unless it's null.
+	 *  The round is also recorded by the flight recorder. (see RoundEvent)
+	 */
+	private double[] round(ConsoleApp context, SimulationPool pool, int number, final int simulationsPerRound, SimulationMetrics metrics) throws InterruptedException, ExecutionException {
+		// Only with a recording. (see Simulation.startEvent())
+		RoundEvent event = FlightRecorder.isInitialized() ? new RoundEvent() : null;
+		if (event != null) {
+			event.begin();
+		}
+		
+		ResultsAccumulator accumulator = new ResultsAccumulator(context.getPopulation());
+		List<Layout> layouts = context.getSimulationFactory().getLayouts();
+		
+		List<Future<?>> simulations = new ArrayList<>(simulationsPerRound);
 		for (int i = 0; i < simulationsPerRound; i++) {
-			List<Integer> currentFitness = context.newSimulation().finish().fitness();
-			if (fitness == null) {
-				fitness = currentFitness;
-			} else {
-				addTo(fitness, currentFitness);
+			// Streams are split here, in order, so the results do not depend on the threads.
+			SplittableRandom simulationRandom = context.splitRandom();
+			Layout layout = layouts.isEmpty() ? null : layouts.get(i);
+			
+			// Taken from the pool in the task, so only as many simulations as threads are kept in memory.
+			simulations.add(context.getExecutor().submit(() -> {
+				Simulation sim = layout != null ? context.newSimulation(pool, layout) : context.newSimulation(pool, simulationRandom);
+				
+				// Stepped here instead of finish(), so that cancelling the round stops it.
+				while (!sim.ended()) {
+					if (Thread.interrupted()) {
+						return null;
+					}
+					
+					sim.step();
+				}
+				
+				accumulator.add(sim.getResults());
+				
+				if (metrics != null) {
+					metrics.add(sim.getMetrics());
+				}
+				
+				// Only finished simulations go back, a failed one could be broken.
+				pool.release(sim);
+				return null;
+			}));
+		}
+		
+		try {
+			for (Future<?> simulation : simulations) {
+				simulation.get();
+			}
+		} finally {
+			// Don't leave the rest running if one of them failed. (running ones stop at their next step)
+			for (Future<?> simulation : simulations) {
+				simulation.cancel(true);
 			}
 		}
 		
-		divideAll(fitness, simulationsPerRound);
-		int max = Collections.max(fitness);
-		double avg = calculateAverage(fitness);
+		double[] fitness = accumulator.means();
 		
-		context.print("Max:" + max + " | Avg: " + avg + " ");
+		// The best genotype, and how sure we are about it.
+		int best = 0;
+		double sum = 0;
+		for (int id = 0; id < fitness.length; id++) {
+			sum += fitness[id];
+			
+			if (fitness[id] > fitness[best]) {
+				best = id;
+			}
+		}
+		
+		context.print(String.format("Max: %.2f (+-%.2f) | Avg: %.2f ", fitness[best], 2 * accumulator.standardError(best), sum / fitness.length));
+		
+		if (event != null) {
+			event.end();
+			
+			if (event.shouldCommit()) {
+				event.round = number;
+				event.simulations = simulationsPerRound;
+				event.maxFitness = fitness[best];
+				event.avgFitness = sum / fitness.length;
+				event.commit();
+			}
+		}
 		
 		return fitness;
 	}
 	
-	private static double calculateAverage(List<Integer> list) {
-		int sum = 0;
-		for (int i : list) 
-			sum += i;
-		
-		return sum / (double)list.size();
+	private void seed(Query query, ConsoleApp context) {
+		context.setSeed(query.consumeLong());
 	}
 	
-	private static void addTo(List<Integer> to, List<Integer> from) {
-		assert to.size() == from.size() : "To size must be equal to from size.";
+	private void threads(Query query, ConsoleApp context) {
+		int threads = query.consumeInt();
 		
-		for (int i = 0; i < to.size(); i++) {
-			int added = to.get(i) + from.get(i);
-			to.set(i, added);
-		}
-	}
-	
-	private static void divideAll(List<Integer> list, final int divisor) {
-		for (int i = 0; i < list.size(); i++) {
-			int divided = list.get(i) / divisor;
-			
-			assert divided > 0;
-			list.set(i, divided);
+		if (threads < 1) {
+			query.throwError("Number of threads must be greater than 0.");
 		}
+		
+		context.setThreads(threads);
 	}
 	
 	private void finish(Query query, ConsoleApp context) {
@@ -517,6 +825,11 @@ class Commands {
 		}
 		
 		context.print(context.getSimulation().getSteps() + "\n");
+		
+		SimulationMetrics metrics = context.getSimulation().getMetrics();
+		if (metrics != null) {
+			context.print(metrics.toString());
+		}
 	}
 	
 	private void help(Query query, ConsoleApp context) {
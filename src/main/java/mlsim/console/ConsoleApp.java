@@ -6,11 +6,18 @@ import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import mlsim.simulation.Entity;
+import mlsim.simulation.Layout;
+import mlsim.simulation.Recorder;
+import mlsim.simulation.Recording;
 import mlsim.simulation.Results;
 import mlsim.simulation.Simulation;
 import mlsim.simulation.SimulationFactory;
+import mlsim.simulation.SimulationPool;
 import mlsim.wrapper.GAWrapper;
 
 /**
@@ -34,12 +41,25 @@ public class ConsoleApp {
 	// Interactive simulation.
 	private Simulation activeSimulation;
 	
+	// Records the interactive simulation. (null if it was never asked to)
+	// It's kept after the simulation ends, so it can be replayed.
+	private Recorder recorder;
+	
 	// Macros
 	private final Map<String, List<String>> macros = new HashMap<>();
 	
 	// Saving and loading
 	private final FileIO io = new FileIO();
 	
+	
+	// Master random number stream. Populations, selection and every simulation
+	// get their own streams split from it, so a seeded session is reproducible.
+	private SplittableRandom random = new SplittableRandom();
+	
+	// Runs the simulations of a batch round. Created when first needed.
+	private ExecutorService executor;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	
 	public static void main(String[] args) {
 		CommandParser parser = new CommandParser(Commands.initialize());
 		new ConsoleApp(parser).run();
@@ -51,6 +71,7 @@ public class ConsoleApp {
 		this.parser = parser;
 	}
 	
+	
 	/**
 	 *  Method used to start the program which contains its main loop.
 	 */
@@ -70,6 +91,10 @@ public class ConsoleApp {
 		}
 		
 		scanner.close();
+		
+		if (executor != null) {
+			executor.shutdown();
+		}
 	}
 	
 	/**
@@ -101,7 +126,43 @@ public class ConsoleApp {
 	 * @return New simulation.
 	 */
 	public Simulation newSimulation() {
-		return simFactory.newSimulation(currentPopulation);
+		return newSimulation(splitRandom());
+	}
+	
+	/**
+	 * Creates a new simulation with the saved parameters and the current
+	 * population, which uses the given random number stream.
+	 * Unlike newSimulation(), it can be called from other threads.
+	 * 
+	 * @param simulationRandom Random number stream of the simulation. (see splitRandom())
+	 * @return New simulation.
+	 */
+	public Simulation newSimulation(SplittableRandom simulationRandom) {
+		return simFactory.newSimulation(currentPopulation, simulationRandom);
+	}
+	
+	/**
+	 * Same as newSimulation(simulationRandom), but the simulation is taken from a pool.
+	 * It should be released to the pool after it's done.
+	 * 
+	 * @param pool Pool with this context's simulation parameters.
+	 * @param simulationRandom Random number stream of the simulation. (see splitRandom())
+	 * @return New simulation.
+	 */
+	public Simulation newSimulation(SimulationPool pool, SplittableRandom simulationRandom) {
+		return pool.acquire(currentPopulation, simulationRandom);
+	}
+	
+	/**
+	 * Same as newSimulation(pool, simulationRandom), but the simulation starts from a layout.
+	 * (see SimulationFactory.setLayouts())
+	 * 
+	 * @param pool Pool with this context's simulation parameters.
+	 * @param layout Start of the simulation.
+	 * @return New simulation.
+	 */
+	public Simulation newSimulation(SimulationPool pool, Layout layout) {
+		return pool.acquire(currentPopulation, layout);
 	}
 	
 	/**
@@ -128,10 +189,10 @@ public class ConsoleApp {
 	/**
 	 * Update the population, given this fitness.
 	 * 
-	 * @param fitness Fitness
+	 * @param fitness Fitness of every genotype, by id. (mean fitness after a batch round)
 	 */
-	public void updatePopulation(List<Integer> fitness) {
-		currentPopulation = selector.updatePopulation(currentPopulation, fitness);
+	public void updatePopulation(double[] fitness) {
+		currentPopulation = selector.updatePopulation(currentPopulation, fitness, splitRandom());
 	}
 	
 	/**
@@ -180,6 +241,15 @@ public class ConsoleApp {
 		addResults(null); // Removes the results of the last simulation, to avoid accidental double updating.
 	}
 	
+	/**
+	 * Returns the current population.
+	 * 
+	 * @return Current population.
+	 */
+	public List<GAWrapper> getPopulation() {
+		return currentPopulation;
+	}
+	
 	/**
 	 *  Returns true if population is initialized.
 	 * 
@@ -233,6 +303,22 @@ public class ConsoleApp {
 		return activeSimulation;
 	}
 	
+	/**
+	 * Starts recording the active simulation. The last recording is dropped.
+	 */
+	public void startRecording() {
+		recorder = new Recorder(activeSimulation);
+	}
+	
+	/**
+	 * Returns the last recording.
+	 * 
+	 * @return The recording or null if nothing was recorded.
+	 */
+	public Recording getRecording() {
+		return recorder == null ? null : recorder.getRecording();
+	}
+	
 	/**
 	 * Removes the current simulation with its (if exits) other state.
 	 */
@@ -240,6 +326,68 @@ public class ConsoleApp {
 		activeSimulation = null;
 	}
 	
+	/**
+	 * Returns the executor on which independent simulations are run.
+	 * 
+	 * @return Executor with getThreads() threads.
+	 */
+	public ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(threads, runnable -> {
+				Thread thread = new Thread(runnable, "simulation");
+				thread.setDaemon(true); // So it does not keep the program alive.
+				return thread;
+			});
+		}
+		
+		return executor;
+	}
+	
+	/**
+	 * Sets the number of simulations that can run at the same time.
+	 * The old executor finishes its tasks and a new one is created when needed.
+	 * 
+	 * @param newThreads Number of threads. (at least 1)
+	 */
+	public void setThreads(int newThreads) {
+		assert newThreads > 0 : "Number of threads must be greater than 0.";
+		
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+		
+		threads = newThreads;
+	}
+	
+	/**
+	 * Returns the number of simulations that can run at the same time.
+	 * 
+	 * @return Number of threads.
+	 */
+	public int getThreads() {
+		return threads;
+	}
+	
+	/**
+	 * Restarts the master random number stream with this seed.
+	 * 
+	 * @param seed Master seed.
+	 */
+	public void setSeed(long seed) {
+		random = new SplittableRandom(seed);
+	}
+	
+	/**
+	 * Returns a new random number stream split from the master one.
+	 * Should only be called from the console's thread.
+	 * 
+	 * @return Independent random number stream.
+	 */
+	public SplittableRandom splitRandom() {
+		return random.split();
+	}
+	
 	/* Macros */
 	
 	/**
@@ -290,4 +438,18 @@ public class ConsoleApp {
 	public void load(String fileName) throws IOException {
 		setPopulation(io.load(fileName));
 	}
+	
+	/**
+	 * Saves a checkpoint of the active simulation.
+	 */
+	public void checkpoint(String fileName) throws IOException {
+		io.saveSimulation(fileName, activeSimulation);
+	}
+	
+	/**
+	 * Restores a simulation of the current population and makes it active.
+	 */
+	public void resume(String fileName) throws IOException {
+		activeSimulation = io.loadSimulation(fileName, currentPopulation);
+	}
 }
@@ -1,6 +1,10 @@
 package mlsim.console;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
@@ -9,6 +13,7 @@ import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 
+import mlsim.simulation.Simulation;
 import mlsim.solution.GeneticAlgorithm;
 import mlsim.wrapper.GAWrapper;
 /**
@@ -79,4 +84,35 @@ public class FileIO {
 		}
 		
 	}
+
+	/**
+	 * Saves a checkpoint of the simulation in the specified file.
+	 * 
+	 * @param fileName File name. An extension is added to this name.
+	 * @param sim Simulation to be saved.
+	 * @throws IOException If there is a problem with saving.
+	 */
+	void saveSimulation(String fileName, Simulation sim) throws IOException {
+		fileName = fileName + ".ckpt";
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(fileName))))) {
+			sim.writeTo(out);
+		}
+	}
+
+	/**
+	 * Restores a simulation from a checkpoint.
+	 * 
+	 * @param fileName File name. A special extension is added to the filename.
+	 * @param population Population of the saved simulation.
+	 * @return The simulation.
+	 * @throws IOException If there is a problem with loading or the population is different.
+	 */
+	Simulation loadSimulation(String fileName, List<GAWrapper> population) throws IOException {
+		fileName = fileName + ".ckpt";
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(fileName))))) {
+			return Simulation.readFrom(in, population);
+		}
+	}
 }
@@ -0,0 +1,34 @@
+package mlsim.console;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event of creating a new population. (see Selector.updatePopulation())
+ *
+ * @author bingis_khan
+ *
+ */
+@Name("mlsim.Generation")
+@Label("Generation")
+@Category({ "mlsim", "Training" })
+@Description("A new population made by selection, crossover and mutation.")
+class GenerationEvent extends Event {
+	
+	@Label("Population Size")
+	int populationSize;
+	
+	@Label("Selected")
+	@Description("Genotypes copied without changes.")
+	int selected;
+	
+	@Label("Crossovers")
+	@Description("Number of crossovers (each one makes two genotypes).")
+	int crossovers;
+	
+	@Label("Mutations")
+	int mutations;
+}
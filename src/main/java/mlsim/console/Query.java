@@ -88,6 +88,28 @@ class Query {
 		return i;
 	}
 	
+	/**
+	 * Consumes and returns the next long integer.
+	 * If that's not possible, throws a ParseException.
+	 * 
+	 * @throws ParseException
+	 * @return Consumed long.
+	 */
+	public long consumeLong() {
+		String next = next();
+		
+		// See: consumeDouble()
+		long l = 0;
+		
+		try {
+			l = Long.parseLong(next);
+		} catch (NumberFormatException e) {
+			throwError(next + " is not an integer!");
+		}
+		
+		return l;
+	}
+
 	/**
 	 * Consumes and returns the next double. 
 	 * If that's not possible, throws a ParseException.
@@ -0,0 +1,35 @@
+package mlsim.console;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event of a single batch round - its duration is the wall time
+ * of running every simulation of the round. (see Commands.round())
+ *
+ * @author bingis_khan
+ *
+ */
+@Name("mlsim.Round")
+@Label("Batch Round")
+@Category({ "mlsim", "Training" })
+@Description("A round of batch training: its simulations and their fitness.")
+class RoundEvent extends Event {
+	
+	@Label("Round")
+	int round;
+	
+	@Label("Simulations")
+	int simulations;
+	
+	@Label("Max Fitness")
+	@Description("Best mean fitness of a genotype.")
+	double maxFitness;
+	
+	@Label("Avg Fitness")
+	@Description("Mean fitness of the whole population.")
+	double avgFitness;
+}
@@ -2,7 +2,9 @@ package mlsim.console;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.random.RandomGenerator;
+
+import jdk.jfr.FlightRecorder;
 
 import mlsim.util.Tuple;
 import mlsim.wrapper.GAWrapper;
@@ -16,8 +18,6 @@ import mlsim.wrapper.GAWrapper;
  * 
  */
 class Selector {
-	private static final Random RAND = new Random();
-	
 	private final int selection, crossover, mutation;
 	
 	public Selector(int sel, int cro, int mut) {
@@ -28,19 +28,33 @@ class Selector {
 		assert sel + cro + mut == 100 : "Selection, crossover and mutation must add up to 100.";
 	}
 	
-	private GAWrapper randomSelect(List<GAWrapper> old, List<Integer> fitness) {
-		int combinedFitness = 0;
-		for (int fit : fitness) {
+	private GAWrapper randomSelect(List<GAWrapper> old, double[] fitness, RandomGenerator rand) {
+		double combinedFitness = 0;
+		for (double fit : fitness) {
 			combinedFitness += fit;
 		}
 		
-		// Selecting
-		int selectedFitness = RAND.nextInt(combinedFitness) + 1;
-		int selectIndex = -1;
-		// Ehh, looks bad, but works as intended.
-		for (int fitnessSum = 0; fitnessSum < selectedFitness; selectIndex++, fitnessSum += fitness.get(selectIndex));
+		assert combinedFitness > 0 : "Combined fitness must be positive.";
 		
-		return old.get(selectIndex);
+		// Selecting. Genotypes with 0 fitness are never selected.
+		double selectedFitness = rand.nextDouble() * combinedFitness;
+		double fitnessSum = 0;
+		
+		for (int i = 0; i < fitness.length; i++) {
+			fitnessSum += fitness[i];
+			
+			if (fitnessSum > selectedFitness) {
+				return old.get(i);
+			}
+		}
+		
+		// Only if rounding made the sums come out a bit short - the last one with any fitness.
+		int last = fitness.length - 1;
+		while (fitness[last] <= 0) {
+			last--;
+		}
+		
+		return old.get(last);
 	}
 	
 	// DEPENDS ON THE CORRECT ORDERING OF BOTH LISTS, WHICH IS AN ANTIPATTERN. FUCK
@@ -49,10 +63,17 @@ class Selector {
 	 * 
 	 * @param old Old population.
 	 * @param fitness Fitness of this population.
+	 * @param rand Random number generator used for selection and the genetic operators.
 	 * @return New, updated population.
 	 */
-	List<GAWrapper> updatePopulation(List<GAWrapper> old, List<Integer> fitness) {
-		assert old.size() == fitness.size() : "Population size must be equal to the size of the list of fitnesses.";
+	List<GAWrapper> updatePopulation(List<GAWrapper> old, double[] fitness, RandomGenerator rand) {
+		assert old.size() == fitness.length : "Population size must be equal to the size of the list of fitnesses.";
+		
+		// Only with a recording. (see Simulation.startEvent())
+		GenerationEvent event = FlightRecorder.isInitialized() ? new GenerationEvent() : null;
+		if (event != null) {
+			event.begin();
+		}
 		
 		int selectGa = Math.round(old.size() * selection / (float)100),
 			crossoverGa = Math.round(old.size() * crossover / (float)100)/2,
@@ -62,16 +83,16 @@ class Selector {
 		
 		// Selection
 		for (int i = 0; i < selectGa; i++) {
-			GAWrapper select = randomSelect(old, fitness);
+			GAWrapper select = randomSelect(old, fitness, rand);
 			newPopulation.add(select);
 		}
 		
 		// Crossover
 		for (int i = 0; i < crossoverGa; i++) {
-			GAWrapper co1 = randomSelect(old, fitness),
-					  co2 = randomSelect(old, fitness);
+			GAWrapper co1 = randomSelect(old, fitness, rand),
+					  co2 = randomSelect(old, fitness, rand);
 			
-			Tuple<GAWrapper, GAWrapper> cod = co1.crossover(co2);
+			Tuple<GAWrapper, GAWrapper> cod = co1.crossover(co2, rand);
 			
 			newPopulation.add(cod.first());
 			newPopulation.add(cod.second());
@@ -79,13 +100,25 @@ class Selector {
 		
 		// Mutation
 		for (int i = 0; i < mutationGa; i++) {
-			GAWrapper mutated = randomSelect(old, fitness).mutate();
+			GAWrapper mutated = randomSelect(old, fitness, rand).mutate(rand);
 			
 			newPopulation.add(mutated);
 		}
 		
 		assert old.size() == newPopulation.size() : "The size of the new population must be the same as the old one.";
 		
+		if (event != null) {
+			event.end();
+			
+			if (event.shouldCommit()) {
+				event.populationSize = newPopulation.size();
+				event.selected = selectGa;
+				event.crossovers = crossoverGa;
+				event.mutations = mutationGa;
+				event.commit();
+			}
+		}
+	
 		return newPopulation;
 	}
 }
@@ -12,6 +12,7 @@ import java.nio.file.Paths;
 import javax.imageio.ImageIO;
 
 import mlsim.simulation.Entity;
+import mlsim.simulation.Replay;
 import mlsim.simulation.Simulation;
 import mlsim.simulation.SimulationState;
 /**
@@ -25,7 +26,11 @@ public class Gui {
 	private Display display;
 	private final int windowWidth, windowHeight;
 	private final String title;
-	private final Simulation simulation;
+	private Simulation simulation;
+	
+	// Replay shown instead of a live simulation. (null if there is none)
+	// Its simulation is replaced when it goes back, so it's refreshed after every move.
+	private final Replay replay;
 
 	private boolean running = true;
 
@@ -46,10 +51,22 @@ public class Gui {
 
 	
 	public Gui(String title, int windowWidth, int windowHeight, Simulation simulation) {
+		this(title, windowWidth, windowHeight, simulation, null);
+	}
+	
+	/**
+	 * Shows a replay. Left and right arrows step back and forth. (best when paused)
+	 */
+	public Gui(String title, int windowWidth, int windowHeight, Replay replay) {
+		this(title, windowWidth, windowHeight, replay.getSimulation(), replay);
+	}
+	
+	private Gui(String title, int windowWidth, int windowHeight, Simulation simulation, Replay replay) {
 		this.windowWidth = windowWidth;
 		this.windowHeight = windowHeight;
 		this.title = title;
 		this.simulation = simulation;
+		this.replay = replay;
 		
 		width = simulation.getWidth();
 		height = simulation.getHeight();
@@ -78,6 +95,28 @@ public class Gui {
 		if (keyManager.keyJustPressed(KeyEvent.VK_SPACE)) {
 			paused = !paused;
 		}
+		
+		if (replay != null) {
+			if (keyManager.keyJustPressed(KeyEvent.VK_RIGHT)) {
+				replay.step();
+			} else if (keyManager.keyJustPressed(KeyEvent.VK_LEFT)) {
+				replay.seek(Math.max(replay.getPosition() - 1, 0));
+			}
+			
+			simulation = replay.getSimulation();
+		}
+	}
+
+	/**
+	 *  Steps the simulation or the replay.
+	 */
+	private void step() {
+		if (replay != null) {
+			replay.step();
+			simulation = replay.getSimulation();
+		} else {
+			simulation.step();
+		}
 	}
 	
 	private void move(int moveX, int moveY) {
@@ -170,7 +209,7 @@ public class Gui {
 				if (stepTicks == ticksPerStep) { // Step through the simulation every few ticks.
 					stepTicks = 0;
 
-					if (!paused) simulation.step();
+					if (!paused) step();
 				}
 			}
 			if (timer >= 1000000000) {
@@ -1,5 +1,7 @@
 package mlsim.operators;
 
+import java.util.random.RandomGenerator;
+
 import mlsim.util.Tuple;
 
 /**
@@ -7,5 +9,5 @@ import mlsim.util.Tuple;
  *  and the ability to perform it.
  */
 public interface Crossover<T extends Crossover<T>> {
-	Tuple<T, T> crossover(T other);
+	Tuple<T, T> crossover(T other, RandomGenerator rand);
 }
@@ -1,7 +1,10 @@
 package mlsim.operators;
+
+import java.util.random.RandomGenerator;
+
 /**
  *  Mutable is an interface that represents the object that can be mutated.
  */
 public interface Mutable<T extends Mutable<T>> {
-	T mutate();
+	T mutate(RandomGenerator rand);
 }
@@ -1,74 +1,57 @@
 package mlsim.simulation;
 
-import mlsim.wrapper.Wrapper;
+import mlsim.wrapper.GAWrapper;
 
 /**
- * Agent is a subclass of entity that represents a single organism in a simulation, 
+ * Agent is a subclass of entity that represents a single organism in a simulation,
  * along with coordinates and its hunger meter.
- * 
+ *
+ * Its state is kept in the simulation's AgentStore - an agent is only a lightweight
+ * view on one of its slots. (and the slot may change when agents are removed)
+ *
  * You also provide an id to identify this agent. A shitty duct tape-like solution,
  * because the deadline is tomorrow. 죽고 싶어요.
- * 
+ *
  * @author bingis_khan
  *
- * @param <T> The type of the algorithm it uses.
  */
-public class Agent<T extends Wrapper<T>> extends Entity {
-	private final T genotype;
-	private final int id;
+public class Agent extends Entity {
+	private final AgentStore store;
+	private int slot;
 	
-	private int food;
-	
-	Agent(T w, int x, int y, int startingFood, int id) {
-		super(x, y);
-		
-		assert startingFood >= 0 : "Starting food of an agent cannot be negative";
-		genotype = w;
-		food = startingFood;
+	Agent(AgentStore store, int slot) {
+		super(0, 0); // Coordinates live in the store.
 		
-		this.id = id;
+		this.store = store;
+		this.slot = slot;
 	}
 	
 	/**
-	 * Moves the agent using its algorithm given the state of the simulation.
+	 * Points this view at a different slot. Used by the store when it moves agents around.
 	 * 
-	 * @param s State of the simulation in which the agent exists.
+	 * @param slot New slot.
 	 */
-	void move(SimulationState s) {
-		Move move = genotype.evaluate(this, s);
-		
-		switch (move) {
-			case NORTH: y--; break;
-			case SOUTH: y++; break;
-			case WEST:  x--; break;
-			case EAST:  x++; break;
-		}
+	void setSlot(int slot) {
+		this.slot = slot;
 	}
 	
-	/**
-	 * Feeds this amount of food to this agent.
-	 * 
-	 * @param foodAmount Amount of food this agent consumes.
-	 */
-	void feed(int foodAmount) {
-		food += foodAmount;
+	@Override
+	public int getX() {
+		return store.x[slot];
 	}
 	
-	
-	/**
-	 * A method used to subtract food from the organism.
-	 * 
-	 * @param subFood Food to be subtracted from this agent's total.
-	 */
-	void subtractFood(int subFood) {
-		 food -= subFood;
+	@Override
+	public int getY() {
+		return store.y[slot];
 	}
 	
 	/**
-	 *  Checks if an agent has starved.
+	 * Returns this agent's remaining energy.
+	 * 
+	 * @return Agent's food.
 	 */
-	boolean starved() {
-		return food <= 0;
+	int getFood() {
+		return store.food[slot];
 	}
 	
 	/**
@@ -87,14 +70,21 @@ public class Agent<T extends Wrapper<T>> extends Entity {
 	 * 
 	 * @return The algorithm.
 	 */
-	T getAlgorithm() {
-		return genotype;
+	GAWrapper getAlgorithm() {
+		return store.genotype[slot];
 	}
 	
 	/**
 	 *  Returns this agent's id.
 	 */
 	int getId() {
-		return id;
+		return store.id[slot];
+	}
+	
+	/**
+	 *  Returns this agent's slot in the store.
+	 */
+	int getSlot() {
+		return slot;
 	}
 }
@@ -0,0 +1,161 @@
+package mlsim.simulation;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * AgentStatistics records what every agent of a simulation did, by its id:
+ * how much it ate, how many agents it killed, how far it went, how many of its moves
+ * were random (for GAWrapper - when none of its rules matched) and how it died.
+ *
+ * They're kept in plain arrays, which the simulation updates directly.
+ * Simulations only collect them when it's turned on in their factory,
+ * and hand them out with their results. (see Results.statistics())
+ *
+ * @author bingis_khan
+ *
+ */
+public class AgentStatistics {
+	
+	/**
+	 * How an agent's life ended.
+	 */
+	public enum Death {
+		KILLED("killed in a fight"),
+		STARVED("starved"),
+		LEFT_BOUNDS("left the plane"),
+		STOPPED("alive when the simulation was stopped");
+		
+		private final String description;
+		
+		Death(String description) {
+			this.description = description;
+		}
+		
+		@Override
+		public String toString() {
+			return description;
+		}
+	}
+	
+	// Package-private, so the simulation can count directly. All by id.
+	final int[] meals, kills, distance, randomMoves;
+	final Death[] deaths;
+	
+	AgentStatistics(int agents) {
+		meals = new int[agents];
+		kills = new int[agents];
+		distance = new int[agents];
+		randomMoves = new int[agents];
+		deaths = new Death[agents];
+	}
+	
+	/**
+	 *  The agent with this id killed the other one.
+	 */
+	void killed(int killer, int victim) {
+		kills[killer]++;
+		deaths[victim] = Death.KILLED;
+	}
+	
+	/**
+	 * Writes what every agent did so far. (see readFrom())
+	 * 
+	 * @param out Where to write.
+	 * @throws IOException If it cannot be written.
+	 */
+	void writeTo(DataOutput out) throws IOException {
+		for (int id = 0; id < agents(); id++) {
+			out.writeInt(meals[id]);
+			out.writeInt(kills[id]);
+			out.writeInt(distance[id]);
+			out.writeInt(randomMoves[id]);
+			out.writeByte(deaths[id] == null ? -1 : deaths[id].ordinal());
+		}
+	}
+	
+	/**
+	 * Replaces everything with what writeTo() wrote for the same number of agents.
+	 * 
+	 * @param in Where to read from.
+	 * @throws IOException If it cannot be read.
+	 */
+	void readFrom(DataInput in) throws IOException {
+		Death[] causes = Death.values();
+		
+		for (int id = 0; id < agents(); id++) {
+			meals[id] = in.readInt();
+			kills[id] = in.readInt();
+			distance[id] = in.readInt();
+			randomMoves[id] = in.readInt();
+			
+			int death = in.readByte();
+			if (death < -1 || death >= causes.length) {
+				throw new IOException("Invalid cause of death: " + death + ".");
+			}
+			
+			deaths[id] = death == -1 ? null : causes[death];
+		}
+	}
+	
+	/**
+	 * Returns the number of agents.
+	 * 
+	 * @return Number of agents.
+	 */
+	public int agents() {
+		return meals.length;
+	}
+	
+	/**
+	 * Returns the number of food samples the agent with this id ate.
+	 * 
+	 * @param id Id of the agent.
+	 * @return Number of meals.
+	 */
+	public int meals(int id) {
+		return meals[id];
+	}
+	
+	/**
+	 * Returns the number of agents the agent with this id killed in fights.
+	 * 
+	 * @param id Id of the agent.
+	 * @return Number of kills.
+	 */
+	public int kills(int id) {
+		return kills[id];
+	}
+	
+	/**
+	 * Returns the number of cells the agent with this id moved.
+	 * 
+	 * @param id Id of the agent.
+	 * @return Distance travelled.
+	 */
+	public int distance(int id) {
+		return distance[id];
+	}
+	
+	/**
+	 * Returns the number of random moves of the agent with this id - moves
+	 * for which its genotype used the simulation's random numbers.
+	 * 
+	 * @param id Id of the agent.
+	 * @return Number of random moves.
+	 */
+	public int randomMoves(int id) {
+		return randomMoves[id];
+	}
+	
+	/**
+	 * Returns how the agent with this id died.
+	 * 
+	 * @param id Id of the agent.
+	 * @return Cause of its death or null if the simulation has not ended yet.
+	 */
+	public Death death(int id) {
+		return deaths[id];
+	}
+}
@@ -0,0 +1,208 @@
+package mlsim.simulation;
+
+import java.util.AbstractList;
+import java.util.List;
+
+import mlsim.wrapper.GAWrapper;
+
+/**
+ * AgentStore keeps the state of every agent in a simulation
+ * in parallel arrays indexed by the agent's slot. Slots are
+ * the agents' positions in the iteration order, so the simulation
+ * can update them in a tight loop instead of going through
+ * separate heap objects.
+ *
+ * Agent objects are only views on a slot of this store.
+ *
+ * @author bingis_khan
+ *
+ */
+class AgentStore {
+	// Package-private, so the simulation can loop over them directly.
+	// Only the first size() slots are valid.
+	final int[] x, y, food, id;
+	final GAWrapper[] genotype;
+	
+	// False for agents that died this step and wait for removal.
+	final boolean[] alive;
+
+	// Energy an agent loses every step. Set by the simulation.
+	final int[] upkeep;
+	
+	// Macro-steps: for how many more turns an agent makes the same move without deciding,
+	// the move itself, the cell of the food it's heading for (-1 if there's none)
+	// and how many food changes of the step it had seen. (see Simulation.settle())
+	final int[] steady, target, seen;
+	final Move[] steadyMove;
+	
+	private final Agent[] views;
+	private int size = 0;
+	
+	// A read-only list of views, so it can be passed around as a list of entities.
+	private final List<Agent> viewList = new AbstractList<Agent>() {
+		@Override
+		public Agent get(int slot) {
+			if (slot < 0 || slot >= size) {
+				throw new IndexOutOfBoundsException("Slot: " + slot + ", size: " + size);
+			}
+			
+			return views[slot];
+		}
+		
+		@Override
+		public int size() {
+			return size;
+		}
+	};
+	
+	/**
+	 * Creates an empty store which can hold at most capacity agents.
+	 * 
+	 * @param capacity Maximum number of agents.
+	 */
+	AgentStore(int capacity) {
+		x = new int[capacity];
+		y = new int[capacity];
+		food = new int[capacity];
+		upkeep = new int[capacity];
+		steady = new int[capacity];
+		target = new int[capacity];
+		seen = new int[capacity];
+		steadyMove = new Move[capacity];
+		id = new int[capacity];
+		genotype = new GAWrapper[capacity];
+		alive = new boolean[capacity];
+		views = new Agent[capacity];
+	}
+	
+	/**
+	 * Adds a new agent at the end of the store.
+	 * 
+	 * @param gtype Genotype of the agent.
+	 * @param ax X position.
+	 * @param ay Y position.
+	 * @param startingFood Starting energy of the agent.
+	 * @param agentId Id of the agent (index of its genotype).
+	 * @return Slot of the new agent.
+	 */
+	int add(GAWrapper gtype, int ax, int ay, int startingFood, int agentId) {
+		assert size < views.length : "Store is full.";
+		assert startingFood >= 0 : "Starting food of an agent cannot be negative";
+		
+		int slot = size++;
+		
+		x[slot] = ax;
+		y[slot] = ay;
+		food[slot] = startingFood;
+		upkeep[slot] = 0;
+		steady[slot] = 0;
+		id[slot] = agentId;
+		genotype[slot] = gtype;
+		alive[slot] = true;
+		
+		// Views of removed agents are kept for reuse. (see moveSlot())
+		if (views[slot] == null) {
+			views[slot] = new Agent(this, slot);
+		} else {
+			views[slot].setSlot(slot);
+		}
+		
+		return slot;
+	}
+	
+	/**
+	 * Moves the agent from one slot to another (lower) one, overwriting it.
+	 * Used for compacting the store after agents have died.
+	 * The overwritten agent's view is moved to the old slot, so it can be reused.
+	 * 
+	 * @param from Slot of the agent.
+	 * @param to Its new slot.
+	 */
+	void moveSlot(int from, int to) {
+		assert to < from : "Agents can only be moved to lower slots.";
+		
+		x[to] = x[from];
+		y[to] = y[from];
+		food[to] = food[from];
+		upkeep[to] = upkeep[from];
+		steady[to] = steady[from];
+		target[to] = target[from];
+		seen[to] = seen[from];
+		steadyMove[to] = steadyMove[from];
+		id[to] = id[from];
+		genotype[to] = genotype[from];
+		alive[to] = alive[from];
+		
+		Agent overwritten = views[to];
+		views[to] = views[from];
+		views[to].setSlot(to);
+		views[from] = overwritten;
+	}
+	
+	/**
+	 * Drops every slot from newSize onwards. Their views are kept for new agents.
+	 * 
+	 * @param newSize The new number of agents.
+	 */
+	void truncate(int newSize) {
+		assert newSize <= size;
+		
+		for (int slot = newSize; slot < size; slot++) {
+			genotype[slot] = null;
+		}
+		
+		size = newSize;
+	}
+	
+	/**
+	 * Moves the agent in this slot.
+	 * 
+	 * @param slot Slot of the agent.
+	 * @param move Where to move.
+	 */
+	void move(int slot, Move move) {
+		switch (move) {
+			case NORTH: y[slot]--; break;
+			case SOUTH: y[slot]++; break;
+			case WEST:  x[slot]--; break;
+			case EAST:  x[slot]++; break;
+		}
+	}
+	
+	/**
+	 * Returns the view of the agent in this slot.
+	 * 
+	 * @param slot Slot of the agent.
+	 * @return Agent view.
+	 */
+	Agent view(int slot) {
+		return views[slot];
+	}
+	
+	/**
+	 * Returns a live, read-only list of views of all agents in slot order.
+	 * 
+	 * @return List of agents.
+	 */
+	List<Agent> views() {
+		return viewList;
+	}
+	
+	/**
+	 * Returns the maximum number of agents in this store.
+	 * 
+	 * @return Capacity.
+	 */
+	int capacity() {
+		return views.length;
+	}
+	
+	/**
+	 * Returns the number of agents in this store.
+	 * 
+	 * @return Number of agents.
+	 */
+	int size() {
+		return size;
+	}
+}
@@ -0,0 +1,265 @@
+package mlsim.simulation;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import mlsim.util.IntList;
+
+/**
+ * BitsetFoodLayer is a FoodLayer which stores the food samples
+ * as a bitset - one bit per cell.
+ * Placing, checking and eating food is constant-time and does not allocate.
+ * 
+ * Every row starts at a new word, so different rows can be changed
+ * from different threads. (see take())
+ *
+ * @author bingis_khan
+ *
+ */
+class BitsetFoodLayer implements FoodLayer {
+	private final int width, height;
+	
+	private final long[] bits;
+	private final int wordsPerRow;
+	private int count = 0;
+	
+	// Cached list view. Null when the food has changed since it was built.
+	private List<Food> view;
+	
+	// Goes up with every change. (see version())
+	private int version = 0;
+	
+	BitsetFoodLayer(int width, int height) {
+		this.width = width;
+		this.height = height;
+		
+		wordsPerRow = (width + 63) / 64;
+		bits = new long[wordsPerRow * height];
+	}
+	
+	/**
+	 *  Converts coordinates to the index of the word with their bit.
+	 */
+	private int word(int x, int y) {
+		assert x >= 0 && x < width && y >= 0 && y < height : "Coordinates (" + x + ", " + y + ") are out of bounds.";
+		return y * wordsPerRow + (x >>> 6);
+	}
+	
+	@Override
+	public boolean has(int x, int y) {
+		return (bits[word(x, y)] & (1L << x)) != 0;
+	}
+	
+	@Override
+	public void place(int x, int y) {
+		assert !has(x, y) : "Tried to place food on a cell which already has food.";
+		
+		bits[word(x, y)] |= 1L << x;
+		count++;
+		changed();
+	}
+	
+	@Override
+	public void consume(int x, int y) {
+		assert has(x, y) : "Tried to eat food from a cell which does not have any.";
+		
+		take(x, y);
+		count--;
+		changed();
+	}
+
+	/**
+	 * Removes the food sample on these coordinates, but does not update
+	 * the count. It only touches the words of row y, so it can be used
+	 * on different rows at the same time. Afterwards, taken() must be
+	 * called with the number of samples taken.
+	 * 
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 */
+	@Override
+	public void take(int x, int y) {
+		assert has(x, y) : "Tried to eat food from a cell which does not have any.";
+		
+		bits[word(x, y)] &= ~(1L << x);
+	}
+	
+	@Override
+	public void takeFrom(int[] cells, int size, IntList eaten) {
+		for (int i = 0; i < size; i++) {
+			int x = cells[i] % width,
+				y = cells[i] / width;
+			
+			if (has(x, y)) {
+				take(x, y);
+				eaten.add(cells[i]);
+			}
+		}
+	}
+
+	@Override
+	public void taken(int amount) {
+		count -= amount;
+		changed();
+	}
+	
+	/**
+	 *  Drops everything cached about the food.
+	 */
+	private void changed() {
+		view = null;
+		version++;
+	}
+	
+	@Override
+	public int version() {
+		return version;
+	}
+	
+	/**
+	 * Finds the food sample closest to these coordinates. (see FoodLayer.nearest())
+	 * 
+	 * Cells are checked in growing diamonds around the coordinates, so close food
+	 * is found quickly. If the food is so sparse that it's cheaper to check
+	 * every sample, it does that instead.
+	 * 
+	 * @param x X coordinate. (on the plane)
+	 * @param y Y coordinate. (on the plane)
+	 * @return Cell (y * width + x) of the closest food or -1 if there is none.
+	 */
+	@Override
+	public int nearest(int x, int y) {
+		if (count == 0) {
+			return -1;
+		}
+		
+		final int maxDistance = Math.max(x, width - 1 - x) + Math.max(y, height - 1 - y);
+		long checked = 0;
+		
+		for (int d = 0; d <= maxDistance; d++) {
+			// Rows from the top, and in a row the left cell first.
+			for (int dy = Math.max(-d, -y), lastDy = Math.min(d, height - 1 - y); dy <= lastDy; dy++) {
+				int cy = y + dy,
+					dx = d - Math.abs(dy);
+				
+				if (x - dx >= 0 && has(x - dx, cy)) {
+					return cy * width + x - dx;
+				}
+				
+				if (dx > 0 && x + dx < width && has(x + dx, cy)) {
+					return cy * width + x + dx;
+				}
+				
+				checked += 2;
+			}
+			
+			if (checked > 4L * count) {
+				return nearestOfAll(x, y);
+			}
+		}
+		
+		assert false : "Food count is positive, but no food was found.";
+		return -1;
+	}
+	
+	/**
+	 *  Same as nearest(), but checks every food sample.
+	 */
+	private int nearestOfAll(int x, int y) {
+		int closest = -1,
+			distance = Integer.MAX_VALUE;
+		
+		for (int word = 0; word < bits.length; word++) {
+			long w = bits[word];
+			
+			int fy = word / wordsPerRow,
+				xOffset = (word % wordsPerRow) * 64;
+			
+			while (w != 0) {
+				int fx = xOffset + Long.numberOfTrailingZeros(w),
+					d = Math.abs(fx - x) + Math.abs(fy - y);
+				
+				if (d < distance) {
+					closest = fy * width + fx;
+					distance = d;
+				}
+				
+				w &= w - 1; // Clear the lowest bit.
+			}
+		}
+		
+		return closest;
+	}
+	
+	@Override
+	public void clear() {
+		Arrays.fill(bits, 0);
+		count = 0;
+		changed();
+	}
+	
+	/**
+	 * Writes the bitset of every food sample. (see readFrom())
+	 * 
+	 * @param out Where to write.
+	 * @throws IOException If it cannot be written.
+	 */
+	@Override
+	public void writeTo(DataOutput out) throws IOException {
+		for (long word : bits) {
+			out.writeLong(word);
+		}
+	}
+	
+	@Override
+	public void readFrom(DataInput in) throws IOException {
+		count = 0;
+		
+		for (int word = 0; word < bits.length; word++) {
+			bits[word] = in.readLong();
+			count += Long.bitCount(bits[word]);
+		}
+		
+		changed();
+	}
+	
+	@Override
+	public int count() {
+		return count;
+	}
+	
+	/**
+	 * Returns a read-only list of food samples. (see FoodLayer.asList())
+	 * Synchronized, because agents choosing moves in parallel may ask for it.
+	 * 
+	 * @return List of food samples.
+	 */
+	@Override
+	public synchronized List<Food> asList() {
+		if (view == null) {
+			List<Food> samples = new ArrayList<>(count);
+			
+			for (int word = 0; word < bits.length; word++) {
+				long w = bits[word];
+				
+				int y = word / wordsPerRow,
+					xOffset = (word % wordsPerRow) * 64;
+				
+				while (w != 0) {
+					samples.add(new Food(xOffset + Long.numberOfTrailingZeros(w), y));
+					w &= w - 1; // Clear the lowest bit.
+				}
+			}
+			
+			assert samples.size() == count : "Food count does not match the number of set bits.";
+			view = Collections.unmodifiableList(samples);
+		}
+		
+		return view;
+	}
+}
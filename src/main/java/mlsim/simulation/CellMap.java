@@ -0,0 +1,160 @@
+package mlsim.simulation;
+
+import java.util.Arrays;
+
+/**
+ * CellMap maps cells of a plane (y * width + x) to ints, without boxing them.
+ * Its memory depends only on how many cells it holds, not on the size of the plane.
+ *
+ * It's a hash table with open addressing (linear probing), at most half full
+ * - it grows when it's not. Removed cells are not left as tombstones - the cells
+ * after them are shifted back, so lookups stay fast no matter how many cells come and go.
+ *
+ * @author bingis_khan
+ *
+ */
+class CellMap {
+	// Returned when a cell is not in the map.
+	static final int ABSENT = -1;
+	
+	// Cell + 1 in every bucket, so 0 means an empty bucket.
+	private int[] keys;
+	private int[] values;
+	private int mask;
+	private int size = 0;
+	
+	/**
+	 * Creates an empty map.
+	 * 
+	 * @param capacity Number of cells it can hold before it has to grow.
+	 */
+	CellMap(int capacity) {
+		// Smallest power of two with room for twice as many.
+		int buckets = Integer.highestOneBit(Math.max(2 * capacity - 1, 1)) << 1;
+		
+		keys = new int[buckets];
+		values = new int[buckets];
+		mask = buckets - 1;
+	}
+	
+	/**
+	 *  Bucket in which the search for a cell starts.
+	 */
+	private int home(int cell) {
+		int h = cell * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+	
+	/**
+	 *  Returns the bucket of a cell or the empty bucket where it would go.
+	 */
+	private int find(int cell) {
+		int key = cell + 1,
+			i = home(cell);
+		
+		while (keys[i] != 0 && keys[i] != key) {
+			i = (i + 1) & mask;
+		}
+		
+		return i;
+	}
+	
+	/**
+	 * Returns the value of a cell.
+	 * 
+	 * @param cell Cell. (not negative)
+	 * @return Its value or ABSENT if it's not in the map.
+	 */
+	int get(int cell) {
+		int i = find(cell);
+		return keys[i] == 0 ? ABSENT : values[i];
+	}
+	
+	/**
+	 * Sets the value of a cell, adding it if it's not in the map.
+	 * 
+	 * @param cell Cell. (not negative)
+	 * @param value Its value.
+	 */
+	void put(int cell, int value) {
+		assert cell >= 0 : "Cells are never negative.";
+		
+		int i = find(cell);
+		if (keys[i] == 0) {
+			if (2 * (size + 1) > keys.length) {
+				grow();
+				i = find(cell);
+			}
+			
+			keys[i] = cell + 1;
+			size++;
+		}
+		
+		values[i] = value;
+	}
+	
+	/**
+	 *  Doubles the number of buckets and puts every cell into its new one.
+	 */
+	private void grow() {
+		int[] oldKeys = keys,
+			  oldValues = values;
+		
+		keys = new int[2 * oldKeys.length];
+		values = new int[2 * oldKeys.length];
+		mask = keys.length - 1;
+		
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != 0) {
+				int to = find(oldKeys[i] - 1);
+				keys[to] = oldKeys[i];
+				values[to] = oldValues[i];
+			}
+		}
+	}
+	
+	/**
+	 * Removes a cell. Does nothing if it's not in the map.
+	 * 
+	 * @param cell Cell.
+	 */
+	void remove(int cell) {
+		int hole = find(cell);
+		if (keys[hole] == 0) {
+			return;
+		}
+		
+		// Shift back every cell after the hole which would not be found past it.
+		for (int i = (hole + 1) & mask; keys[i] != 0; i = (i + 1) & mask) {
+			int home = home(keys[i] - 1);
+			
+			// Stays if its home is (cyclically) after the hole, but not after i.
+			boolean stays = hole <= i ? hole < home && home <= i : hole < home || home <= i;
+			if (!stays) {
+				keys[hole] = keys[i];
+				values[hole] = values[i];
+				hole = i;
+			}
+		}
+		
+		keys[hole] = 0;
+		size--;
+	}
+	
+	/**
+	 * Removes every cell. Costs O(capacity).
+	 */
+	void clear() {
+		Arrays.fill(keys, 0);
+		size = 0;
+	}
+	
+	/**
+	 * Returns the number of cells in the map.
+	 * 
+	 * @return Size of the map.
+	 */
+	int size() {
+		return size;
+	}
+}
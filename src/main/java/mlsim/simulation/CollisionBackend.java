@@ -0,0 +1,19 @@
+package mlsim.simulation;
+
+/**
+ * How a simulation indexes the agents and food on its plane, to find collisions and meals.
+ * 
+ *  - DENSE: an entry for every cell of the plane. Every lookup is a single array access,
+ *    but the memory (and the time to set it up) grows with the area of the plane.
+ *  - SPARSE: only the occupied cells - a hash table of agents and a sorted array of food.
+ *    The memory grows with the number of agents and food samples, so planes with billions
+ *    of cells fit. In simultaneous mode, collisions and meals are found by sorting
+ *    the agents by their cells and merging them with the food.
+ *  - AUTO: sparse if the plane is large and mostly empty, dense otherwise.
+ *  
+ * Without food regrowth, a simulation ends the same way with either one.
+ * With it, they pick different cells for new food.
+ */
+public enum CollisionBackend {
+	AUTO, DENSE, SPARSE
+}
@@ -0,0 +1,68 @@
+package mlsim.simulation;
+
+/**
+ * DenseOccupancyGrid is a plane-sized OccupancyGrid - it has an int for every cell,
+ * so every lookup is a single array access. Cells are independent of each other,
+ * so different cells can be changed from different threads.
+ *
+ * @author bingis_khan
+ *
+ */
+class DenseOccupancyGrid implements OccupancyGrid {
+	private final int width, height;
+	
+	// Slot + 1 of the agent on each cell, so 0 means empty.
+	private final int[] agents;
+	
+	DenseOccupancyGrid(int width, int height) {
+		this.width = width;
+		this.height = height;
+		
+		agents = new int[width * height];
+	}
+	
+	@Override
+	public int width() {
+		return width;
+	}
+	
+	@Override
+	public int height() {
+		return height;
+	}
+	
+	/**
+	 *  Converts coordinates to the index of a cell.
+	 */
+	private int cell(int x, int y) {
+		assert inBounds(x, y) : "Coordinates (" + x + ", " + y + ") are out of bounds.";
+		return y * width + x;
+	}
+	
+	@Override
+	public int agentAt(int x, int y) {
+		return agents[cell(x, y)] - 1;
+	}
+	
+	@Override
+	public void putAgent(int slot, int x, int y) {
+		int i = cell(x, y);
+		
+		assert agents[i] == 0 : "Tried to put an agent on an occupied cell.";
+		agents[i] = slot + 1;
+	}
+	
+	@Override
+	public void removeAgent(int slot, int x, int y) {
+		if (inBounds(x, y) && agents[cell(x, y)] == slot + 1) {
+			agents[cell(x, y)] = 0;
+		}
+	}
+	
+	@Override
+	public void moveSlot(int x, int y, int from, int to) {
+		if (inBounds(x, y) && agents[cell(x, y)] == from + 1) {
+			agents[cell(x, y)] = to + 1;
+		}
+	}
+}
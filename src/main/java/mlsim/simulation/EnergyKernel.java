@@ -0,0 +1,51 @@
+package mlsim.simulation;
+
+import mlsim.util.IntList;
+
+/**
+ * EnergyKernel does the per-agent arithmetic of a step over the AgentStore's arrays:
+ * it subtracts the energy every agent loses and finds the ones that starved.
+ * 
+ * There are two implementations - a plain loop and one using the Vector API
+ * (jdk.incubator.vector), which does a few agents at once. The vector one lives
+ * in its own source set (src/vector/java), which is only built with -Pvector.
+ * It's only used if it was built and the module is there (--add-modules jdk.incubator.vector),
+ * so it's never loaded otherwise. It can also be turned off with -Dmlsim.vector=false.
+ * 
+ * @author bingis_khan
+ *
+ */
+interface EnergyKernel {
+	
+	/**
+	 * Subtracts upkeep from the food of the first size agents and appends
+	 * the slots of the ones left with no food (in slot order) to starved.
+	 * 
+	 * @param food Agents' energy.
+	 * @param upkeep Energy they lose.
+	 * @param size Number of agents.
+	 * @param starved Where to append the starved slots.
+	 */
+	void burn(int[] food, int[] upkeep, int size, IntList starved);
+	
+	/**
+	 * Returns the fastest implementation that works on this JVM.
+	 * 
+	 * @return The kernel.
+	 */
+	static EnergyKernel create() {
+		boolean vector = Boolean.parseBoolean(System.getProperty("mlsim.vector", "true"))
+				&& ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+		
+		if (vector) {
+			try {
+				// By name, so the class (and the module) is not linked when it's not used.
+				return (EnergyKernel)Class.forName("mlsim.simulation.VectorEnergyKernel").getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError | UnsupportedOperationException e) {
+				// Fall back to the plain loop.
+			}
+		}
+		
+		return new ScalarEnergyKernel();
+	}
+}
@@ -0,0 +1,148 @@
+package mlsim.simulation;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+import mlsim.util.IntList;
+
+/**
+ * FoodLayer stores the food samples on a simulation's plane, along with their total count.
+ * Placing, checking and eating food does not scan every sample.
+ *
+ * Food objects are only created for the list view, which is
+ * built lazily and cached until the food changes. (see version())
+ *
+ * There are two implementations: BitsetFoodLayer has a bit for every cell of the plane,
+ * SortedFoodLayer keeps a sorted array of the cells with food - for planes much bigger
+ * than the amount of food on them. (see SimulationFactory.setCollisionBackend())
+ *
+ * @author bingis_khan
+ *
+ */
+interface FoodLayer {
+	
+	/**
+	 * Checks if there is a food sample on these coordinates.
+	 * 
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 * @return True if there is food.
+	 */
+	boolean has(int x, int y);
+	
+	/**
+	 * Places a food sample on these coordinates.
+	 * There must not be any food there already.
+	 * 
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 */
+	void place(int x, int y);
+	
+	/**
+	 * Eats the food sample on these coordinates.
+	 * There must be food there.
+	 * 
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 */
+	void consume(int x, int y);
+	
+	/**
+	 * Removes the food sample on these coordinates, but does not update
+	 * the count. Afterwards, taken() must be called with the number of samples taken.
+	 * 
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 */
+	void take(int x, int y);
+	
+	/**
+	 * Takes the food (as in take()) from every one of these cells which has it
+	 * and appends those cells to eaten.
+	 * 
+	 * @param cells Cells (y * width + x), sorted and different.
+	 * @param size Number of cells.
+	 * @param eaten Where to append the cells with food.
+	 */
+	void takeFrom(int[] cells, int size, IntList eaten);
+	
+	/**
+	 * Updates the count after food was removed with take(). Called once at the end
+	 * of every step, even if nothing was taken, so that layers which remove the taken
+	 * and consumed food lazily can finish removing it.
+	 * 
+	 * @param amount Number of samples taken.
+	 */
+	void taken(int amount);
+	
+	/**
+	 * Returns a number that changes whenever the food does, so whoever
+	 * caches something about the food can tell if it's still valid.
+	 * 
+	 * @return Version of the food.
+	 */
+	int version();
+	
+	/**
+	 * Finds the food sample closest to these coordinates in taxicab distance.
+	 * If there are more, the first one row by row wins. (same as in asList())
+	 * 
+	 * @param x X coordinate. (on the plane)
+	 * @param y Y coordinate. (on the plane)
+	 * @return Cell (y * width + x) of the closest food or -1 if there is none.
+	 */
+	int nearest(int x, int y);
+	
+	/**
+	 * Removes every food sample.
+	 */
+	void clear();
+	
+	/**
+	 * Writes every food sample. (see readFrom())
+	 * 
+	 * @param out Where to write.
+	 * @throws IOException If it cannot be written.
+	 */
+	void writeTo(DataOutput out) throws IOException;
+	
+	/**
+	 * Replaces every food sample with the ones written by writeTo()
+	 * of the same kind of layer, for a plane of the same size.
+	 * 
+	 * @param in Where to read from.
+	 * @throws IOException If it cannot be read.
+	 */
+	void readFrom(DataInput in) throws IOException;
+	
+	/**
+	 * Returns the number of food samples on the plane.
+	 * 
+	 * @return Amount of food.
+	 */
+	int count();
+	
+	/**
+	 * Returns a read-only list of food samples ordered by their cells (row by row).
+	 * It's rebuilt only if the food has changed since the last call.
+	 * Safe to call from more threads, because agents choosing moves in parallel may ask for it.
+	 * 
+	 * @return List of food samples.
+	 */
+	List<Food> asList();
+	
+	/**
+	 * Creates an empty layer.
+	 * 
+	 * @param width Width of the plane.
+	 * @param height Height of the plane.
+	 * @param sparse True for a SortedFoodLayer.
+	 * @return The layer.
+	 */
+	static FoodLayer create(int width, int height, boolean sparse) {
+		return sparse ? new SortedFoodLayer(width, height) : new BitsetFoodLayer(width, height);
+	}
+}
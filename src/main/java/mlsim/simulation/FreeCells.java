@@ -0,0 +1,219 @@
+package mlsim.simulation;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.random.RandomGenerator;
+
+/**
+ * FreeCells is a pool of the cells on which new food can grow
+ * (cells without food), stored as indexes: y * width + x.
+ * 
+ * Adding, removing and taking a random cell are all constant-time:
+ * the cells are kept in a dense array and every cell remembers
+ * its position in it, so a removed cell is swapped with the last one.
+ *
+ * Both arrays are only virtual. A filled pool (see fill()) starts with every cell
+ * on its own position and only the cells and positions which are different
+ * are stored, in CellMaps. So filling it costs O(1) and its memory depends on
+ * how much has changed since, not on the size of the plane.
+ *
+ * @author bingis_khan
+ *
+ */
+class FreeCells {
+	// Position of a cell which is not in the pool.
+	private static final int ABSENT = -2;
+	
+	private final int cellCount;
+	
+	// Cells on the positions and positions of the cells, where they're not the default.
+	private final CellMap cells = new CellMap(16);
+	private final CellMap positions = new CellMap(16);
+	
+	// In a filled pool, every cell is on its own position by default, otherwise it's not in the pool.
+	private boolean filled = false;
+	private int size = 0;
+	
+	/**
+	 * Creates an empty pool for a plane with this many cells.
+	 * 
+	 * @param cellCount Number of cells on the plane.
+	 */
+	FreeCells(int cellCount) {
+		this.cellCount = cellCount;
+	}
+	
+	/**
+	 *  Returns the cell on a position. (smaller than size)
+	 */
+	private int cellAt(int pos) {
+		int cell = cells.get(pos);
+		return cell == CellMap.ABSENT ? pos : cell;
+	}
+	
+	/**
+	 *  Returns the position of a cell or ABSENT.
+	 */
+	private int positionOf(int cell) {
+		int pos = positions.get(cell);
+		if (pos == CellMap.ABSENT) {
+			return filled ? cell : ABSENT;
+		}
+		
+		return pos;
+	}
+	
+	/**
+	 *  Puts a cell on a position, only storing it if it's not the default.
+	 */
+	private void setCell(int pos, int cell) {
+		if (filled && pos == cell) {
+			cells.remove(pos);
+		} else {
+			cells.put(pos, cell);
+		}
+	}
+	
+	/**
+	 *  Sets the position of a cell (or ABSENT), only storing it if it's not the default.
+	 */
+	private void setPosition(int cell, int pos) {
+		if (pos == (filled ? cell : ABSENT)) {
+			positions.remove(cell);
+		} else {
+			positions.put(cell, pos);
+		}
+	}
+	
+	/**
+	 * Checks if this cell is in the pool.
+	 * 
+	 * @param cell Index of the cell.
+	 * @return True if it's free.
+	 */
+	boolean contains(int cell) {
+		return positionOf(cell) != ABSENT;
+	}
+	
+	/**
+	 * Adds a cell to the pool. Does nothing if it's already there.
+	 * 
+	 * @param cell Index of the cell.
+	 */
+	void add(int cell) {
+		if (contains(cell)) {
+			return;
+		}
+		
+		setCell(size, cell);
+		setPosition(cell, size);
+		size++;
+	}
+	
+	/**
+	 * Removes a cell from the pool. Does nothing if it's not there.
+	 * 
+	 * @param cell Index of the cell.
+	 */
+	void remove(int cell) {
+		int pos = positionOf(cell);
+		if (pos == ABSENT) {
+			return;
+		}
+		
+		// Move the last cell into the hole.
+		int last = cellAt(--size);
+		setCell(pos, last);
+		setPosition(last, pos);
+		
+		cells.remove(size);
+		setPosition(cell, ABSENT);
+	}
+	
+	/**
+	 * Removes every cell from the pool.
+	 */
+	void clear() {
+		cells.clear();
+		positions.clear();
+		
+		filled = false;
+		size = 0;
+	}
+	
+	/**
+	 * Puts every cell of the plane into the pool, in order. Costs O(1),
+	 * apart from forgetting what has changed since the last fill.
+	 */
+	void fill() {
+		cells.clear();
+		positions.clear();
+		
+		filled = true;
+		size = cellCount;
+	}
+	
+	/**
+	 * Removes and returns a random cell. The pool must not be empty.
+	 * 
+	 * @param rand Random number generator.
+	 * @return Index of the removed cell.
+	 */
+	int removeRandom(RandomGenerator rand) {
+		assert size > 0 : "Tried to take a cell from an empty pool.";
+		
+		int cell = cellAt(rand.nextInt(size));
+		remove(cell);
+		
+		return cell;
+	}
+	
+	/**
+	 * Writes the cells in the pool, in their order.
+	 * The order matters - it decides which cell removeRandom() picks.
+	 * 
+	 * @param out Where to write.
+	 * @throws IOException If it cannot be written.
+	 */
+	void writeTo(DataOutput out) throws IOException {
+		out.writeInt(size);
+		
+		for (int i = 0; i < size; i++) {
+			out.writeInt(cellAt(i));
+		}
+	}
+	
+	/**
+	 * Adds the cells written by writeTo() to this (empty) pool.
+	 * 
+	 * @param in Where to read from.
+	 * @throws IOException If it cannot be read.
+	 */
+	void readFrom(DataInput in) throws IOException {
+		assert size == 0 && !filled : "Cells can only be read into an empty pool.";
+		
+		int count = in.readInt();
+		if (count < 0 || count > cellCount) {
+			throw new IOException("Invalid number of free cells: " + count + ".");
+		}
+		
+		for (int i = 0; i < count; i++) {
+			int cell = in.readInt();
+			if (cell < 0 || cell >= cellCount) {
+				throw new IOException("Invalid free cell: " + cell + ".");
+			}
+			
+			add(cell);
+		}
+	}
+	
+	/**
+	 * Returns the number of free cells.
+	 * 
+	 * @return Size of the pool.
+	 */
+	int size() {
+		return size;
+	}
+}
@@ -0,0 +1,101 @@
+package mlsim.simulation;
+
+import java.util.SplittableRandom;
+
+/**
+ * Layout is a pre-generated start of a simulation: the cells of its agents (by id)
+ * and food samples, and the state of its random number stream after they were picked
+ * - which decides everything random that happens later (random moves, regrowth, ...).
+ *
+ * A simulation made from a layout is the same as one made by the factory with the stream
+ * the layout was generated with. So every simulation made from the same layout with the same
+ * genotypes ends the same way, and genotypes evaluated on the same layouts are compared
+ * on the same worlds. (common random numbers, see SimulationFactory.setLayouts())
+ *
+ * Layouts never change, so any number of simulations (on any thread) can share one.
+ * Simulations place the agents and food into their own planes.
+ *
+ * @author bingis_khan
+ *
+ */
+public class Layout {
+	final int width, height, agents, foodAmount;
+	
+	// Cells (y * width + x) of the agents, then of the food samples.
+	final int[] cells;
+	
+	// The simulation's random number stream continues from here.
+	final long randomState;
+	
+	private Layout(int width, int height, int agents, int foodAmount, int[] cells, long randomState) {
+		this.width = width;
+		this.height = height;
+		this.agents = agents;
+		this.foodAmount = foodAmount;
+		this.cells = cells;
+		this.randomState = randomState;
+	}
+	
+	/**
+	 * Generates a layout for simulations with the parameters of a factory.
+	 * It's the same as the start of a simulation created with this random stream.
+	 * 
+	 * @param parameters Factory with the simulations' parameters.
+	 * @param agents Number of agents.
+	 * @param random Random number stream. (only its next number is used)
+	 * @param swapped Map used to pick the cells, so one can be used for more layouts.
+	 * @return New layout.
+	 */
+	static Layout generate(SimulationFactory parameters, int agents, SplittableRandom random, CellMap swapped) {
+		int width = parameters.getWidth(),
+			height = parameters.getHeight(),
+			foodAmount = Simulation.calculateFoodAmount(parameters.getFoodPerAgent(), agents);
+		
+		Simulation.checkFits(width, height, agents, foodAmount);
+		
+		ReseedableRandom rand = new ReseedableRandom();
+		rand.reseed(random.nextLong());
+		
+		int[] cells = new int[agents + foodAmount];
+		Simulation.randomCells(rand, width * height, swapped, cells, cells.length);
+		
+		return new Layout(width, height, agents, foodAmount, cells, rand.state());
+	}
+	
+	/**
+	 * Checks if this layout is for these parameters and number of agents.
+	 * 
+	 * @param parameters Factory with the simulations' parameters.
+	 * @param agents Number of agents.
+	 * @return True if a simulation can be made from it.
+	 */
+	public boolean fits(SimulationFactory parameters, int agents) {
+		return fits(parameters.getWidth(), parameters.getHeight(), parameters.getFoodPerAgent(), agents);
+	}
+	
+	/**
+	 *  Same as fits(parameters, agents), for the parameters of a simulation.
+	 */
+	boolean fits(int width, int height, double foodPerAgent, int agents) {
+		return this.width == width && this.height == height && this.agents == agents
+				&& foodAmount == Simulation.calculateFoodAmount(foodPerAgent, agents);
+	}
+	
+	/**
+	 * Returns the number of agents in this layout.
+	 * 
+	 * @return Number of agents.
+	 */
+	public int agents() {
+		return agents;
+	}
+	
+	/**
+	 * Returns the number of food samples in this layout.
+	 * 
+	 * @return Amount of food.
+	 */
+	public int foodAmount() {
+		return foodAmount;
+	}
+}
@@ -0,0 +1,73 @@
+package mlsim.simulation;
+
+import java.util.Arrays;
+
+/**
+ * ListenerList passes every event to a few listeners, in the order they were added.
+ * Used by the simulation when more than one listener is registered,
+ * so with a single one there's no loop at all.
+ * 
+ * @author bingis_khan
+ *
+ */
+class ListenerList implements SimulationListener {
+	private final SimulationListener[] listeners;
+	
+	ListenerList(SimulationListener... listeners) {
+		this.listeners = listeners;
+	}
+	
+	/**
+	 *  Returns a new list with this listener appended.
+	 */
+	ListenerList with(SimulationListener listener) {
+		SimulationListener[] more = Arrays.copyOf(listeners, listeners.length + 1);
+		more[listeners.length] = listener;
+		
+		return new ListenerList(more);
+	}
+	
+	/**
+	 *  Returns the listeners that are left after removing this one
+	 *  - null if none, the listener itself if only one.
+	 */
+	SimulationListener without(SimulationListener listener) {
+		SimulationListener[] left = Arrays.stream(listeners).filter(l -> l != listener).toArray(SimulationListener[]::new);
+		
+		switch (left.length) {
+			case 0: return null;
+			case 1: return left[0];
+			default: return new ListenerList(left);
+		}
+	}
+	
+	@Override
+	public void moved(int agent, int x, int y) {
+		for (SimulationListener l : listeners) l.moved(agent, x, y);
+	}
+	
+	@Override
+	public void ate(int agent, int x, int y) {
+		for (SimulationListener l : listeners) l.ate(agent, x, y);
+	}
+	
+	@Override
+	public void killed(int agent, int killer, int x, int y) {
+		for (SimulationListener l : listeners) l.killed(agent, killer, x, y);
+	}
+	
+	@Override
+	public void starved(int agent, int x, int y) {
+		for (SimulationListener l : listeners) l.starved(agent, x, y);
+	}
+	
+	@Override
+	public void leftBounds(int agent, int x, int y) {
+		for (SimulationListener l : listeners) l.leftBounds(agent, x, y);
+	}
+	
+	@Override
+	public void stepped(Simulation simulation) {
+		for (SimulationListener l : listeners) l.stepped(simulation);
+	}
+}
@@ -0,0 +1,117 @@
+package mlsim.simulation;
+
+/**
+ * OccupancyGrid is an index of which agent lies on every cell
+ * of a simulation's plane. It lets the simulation check collisions
+ * in constant time instead of scanning every agent.
+ * (Food has its own index - FoodLayer.)
+ *
+ * A cell can hold at most one agent (by its slot in the AgentStore).
+ * The simulation is responsible for keeping it up to date
+ * (on placement, movement, eating and death).
+ *
+ * There are two implementations: DenseOccupancyGrid has an int for every cell of the plane,
+ * SparseOccupancyGrid only remembers the occupied ones - for planes much bigger
+ * than their population. (see SimulationFactory.setCollisionBackend())
+ *
+ * @author bingis_khan
+ *
+ */
+interface OccupancyGrid {
+	// Returned when there is no agent on a cell.
+	int EMPTY = -1;
+	
+	/**
+	 *  Returns the width of the plane.
+	 */
+	int width();
+	
+	/**
+	 *  Returns the height of the plane.
+	 */
+	int height();
+	
+	/**
+	 *  Checks if these coordinates lie on the plane.
+	 */
+	default boolean inBounds(int x, int y) {
+		return x >= 0 && x < width() && y >= 0 && y < height();
+	}
+	
+	/**
+	 * Returns the slot of the agent at these coordinates or EMPTY if there is none.
+	 * 
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 * @return Slot of the agent at (x, y) or EMPTY.
+	 */
+	int agentAt(int x, int y);
+	
+	/**
+	 * Finds the taxicab distance to the agent closest to these coordinates,
+	 * but only looks this far. Cells are checked in growing diamonds around them,
+	 * so it costs about 2 * distance^2 lookups.
+	 * 
+	 * @param x X coordinate. (on the plane)
+	 * @param y Y coordinate. (on the plane)
+	 * @param maxDistance How far to look.
+	 * @return Distance to the closest agent or Integer.MAX_VALUE if there is none that close.
+	 */
+	default int nearestAgent(int x, int y, int maxDistance) {
+		if (agentAt(x, y) != EMPTY) {
+			return 0;
+		}
+		
+		final int width = width(),
+				  height = height();
+		
+		for (int d = 1; d <= maxDistance; d++) {
+			for (int dy = Math.max(-d, -y), lastDy = Math.min(d, height - 1 - y); dy <= lastDy; dy++) {
+				int cy = y + dy,
+					dx = d - Math.abs(dy);
+				
+				if (x - dx >= 0 && agentAt(x - dx, cy) != EMPTY) {
+					return d;
+				}
+				
+				if (dx > 0 && x + dx < width && agentAt(x + dx, cy) != EMPTY) {
+					return d;
+				}
+			}
+		}
+		
+		return Integer.MAX_VALUE;
+	}
+	
+	/**
+	 *  Puts an agent's slot on these coordinates.
+	 *  The cell must be empty.
+	 */
+	void putAgent(int slot, int x, int y);
+	
+	/**
+	 *  Removes an agent's slot from these coordinates.
+	 *  Does nothing if they are out of bounds or the slot is not indexed there
+	 *  (ex. it has already been removed).
+	 */
+	void removeAgent(int slot, int x, int y);
+	
+	/**
+	 *  Changes the slot indexed on these coordinates, if it's the given one.
+	 *  Used when agents change their slots in the store.
+	 */
+	void moveSlot(int x, int y, int from, int to);
+	
+	/**
+	 * Creates an empty grid.
+	 * 
+	 * @param width Width of the plane.
+	 * @param height Height of the plane.
+	 * @param agents Most agents on the plane at once.
+	 * @param sparse True for a SparseOccupancyGrid.
+	 * @return The grid.
+	 */
+	static OccupancyGrid create(int width, int height, int agents, boolean sparse) {
+		return sparse ? new SparseOccupancyGrid(width, height, agents) : new DenseOccupancyGrid(width, height);
+	}
+}
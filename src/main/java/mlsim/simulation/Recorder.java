@@ -0,0 +1,103 @@
+package mlsim.simulation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * A Recorder listens to a simulation and records the moves of its agents,
+ * so it can be replayed later without evaluating any genotypes. (see Replay)
+ * 
+ * Moves are worked out from the agents' positions - the recorder remembers
+ * where every agent was and compares it with where it moved.
+ * 
+ * @author bingis_khan
+ *
+ */
+public class Recorder implements SimulationListener {
+	private final Recording recording;
+	
+	// Last known position of every agent, by its id.
+	private final int[] x, y;
+	
+	/**
+	 * Starts recording a simulation from its current step.
+	 * Must be created between steps.
+	 * 
+	 * @param simulation Simulation to record.
+	 */
+	public Recorder(Simulation simulation) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		
+		try {
+			simulation.writeTo(new DataOutputStream(bytes));
+		} catch (IOException e) {
+			// Never happens - it's written to memory.
+			throw new UncheckedIOException(e);
+		}
+		
+		recording = new Recording(bytes.toByteArray());
+		
+		x = new int[simulation.populationSize()];
+		y = new int[simulation.populationSize()];
+		
+		// They're all agents, the list is only typed as entities.
+		for (Entity entity : simulation.getSimulationState().agents()) {
+			Agent agent = (Agent)entity;
+			
+			x[agent.getId()] = agent.getX();
+			y[agent.getId()] = agent.getY();
+		}
+		
+		simulation.addListener(this);
+	}
+	
+	@Override
+	public void moved(int agent, int ax, int ay) {
+		record(agent, ax, ay);
+	}
+	
+	@Override
+	public void leftBounds(int agent, int ax, int ay) {
+		record(agent, ax, ay);
+	}
+	
+	@Override
+	public void stepped(Simulation simulation) {
+		recording.endStep(simulation.movedRandomly());
+	}
+	
+	/**
+	 *  Records the move that took an agent to these coordinates.
+	 */
+	private void record(int agent, int ax, int ay) {
+		Move move;
+		
+		if (ay < y[agent]) {
+			move = Move.NORTH;
+		} else if (ay > y[agent]) {
+			move = Move.SOUTH;
+		} else if (ax < x[agent]) {
+			move = Move.WEST;
+		} else {
+			move = Move.EAST;
+		}
+		
+		assert Math.abs(ax - x[agent]) + Math.abs(ay - y[agent]) == 1 : "Agents move one cell at a time.";
+		
+		recording.addMove(move);
+		x[agent] = ax;
+		y[agent] = ay;
+	}
+	
+	/**
+	 * Returns the recording. It keeps growing while the simulation runs.
+	 * Only the steps that have ended are replayed.
+	 * 
+	 * @return The recording.
+	 */
+	public Recording getRecording() {
+		return recording;
+	}
+}
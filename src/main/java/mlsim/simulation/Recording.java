@@ -0,0 +1,123 @@
+package mlsim.simulation;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import mlsim.util.IntList;
+
+/**
+ * A Recording is everything needed to replay a simulation without its genotypes:
+ * a checkpoint of the simulation when the recording started (see Simulation.writeTo()),
+ * which includes its random number streams, and the moves of every step.
+ * 
+ * Moves take 2 bits each, 32 of them in a long. A step's moves are in the order
+ * the agents moved. (slot order, without the agents killed before their turn)
+ * Every step also has a bit which is set if one of its moves was random.
+ * 
+ * Made by a Recorder, replayed by a Replay.
+ * 
+ * @author bingis_khan
+ *
+ */
+public class Recording {
+	private static final Move[] MOVES = Move.values();
+	
+	// The simulation when the recording started.
+	private final byte[] start;
+	
+	// Packed moves and the index of the first move of every step.
+	// (and the number of moves, where the next step starts)
+	private long[] moves = new long[16];
+	private int moveCount = 0;
+	private final IntList stepStarts = new IntList();
+	private final BitSet randomSteps = new BitSet();
+	
+	Recording(byte[] start) {
+		assert MOVES.length <= 4 : "A move must fit in 2 bits.";
+		
+		this.start = start;
+		stepStarts.add(0);
+	}
+	
+	/**
+	 *  Appends a move to the current step.
+	 */
+	void addMove(Move move) {
+		if (moveCount == moves.length * 32) {
+			moves = Arrays.copyOf(moves, moves.length * 2);
+		}
+		
+		moves[moveCount >>> 5] |= (long)move.ordinal() << ((moveCount & 31) * 2);
+		moveCount++;
+	}
+	
+	/**
+	 *  Ends the current step. Moves added afterwards belong to the next one.
+	 *  Random is set if one of its moves was random.
+	 */
+	void endStep(boolean random) {
+		randomSteps.set(steps(), random);
+		stepStarts.add(moveCount);
+	}
+	
+	/**
+	 *  Returns the move with this index. (counted from the start of the recording)
+	 */
+	Move move(int index) {
+		assert index < moveCount : "Move " + index + " was not recorded.";
+		
+		return MOVES[(int)(moves[index >>> 5] >>> ((index & 31) * 2)) & 3];
+	}
+	
+	/**
+	 *  Returns the index of the first move of this step. (counted from 0)
+	 */
+	int firstMove(int step) {
+		assert step < steps() : "Step " + step + " was not recorded.";
+		
+		return stepStarts.get(step);
+	}
+	
+	/**
+	 *  Checks if one of the moves of this step was random.
+	 */
+	boolean wasRandom(int step) {
+		assert step < steps() : "Step " + step + " was not recorded.";
+		
+		return randomSteps.get(step);
+	}
+	
+	/**
+	 *  Returns the checkpoint of the simulation when the recording started.
+	 */
+	byte[] start() {
+		return start;
+	}
+	
+	/**
+	 * Returns the number of recorded steps.
+	 * 
+	 * @return Number of steps.
+	 */
+	public int steps() {
+		return stepStarts.size() - 1;
+	}
+	
+	/**
+	 * Returns the number of recorded moves.
+	 * 
+	 * @return Number of moves.
+	 */
+	public int moves() {
+		return moveCount;
+	}
+	
+	/**
+	 * Returns roughly how many bytes this recording takes.
+	 * 
+	 * @return Size in bytes.
+	 */
+	public long sizeInBytes() {
+		return start.length + (moveCount + 3) / 4 + 4L * stepStarts.size() + randomSteps.size() / 8;
+	}
+}
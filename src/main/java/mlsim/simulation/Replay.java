@@ -0,0 +1,109 @@
+package mlsim.simulation;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * A Replay rebuilds a recorded simulation step by step. (see Recorder)
+ * Agents don't choose their moves - they're read from the recording,
+ * and everything else (fights, food, regrowth) is done like in the original,
+ * so it's much faster than running the simulation again.
+ * 
+ * It can go back too, but only by replaying from the start.
+ * 
+ * @author bingis_khan
+ *
+ */
+public class Replay {
+	private final Recording recording;
+	
+	// The replayed simulation, and how many recorded steps it went through.
+	private Simulation simulation;
+	private int position;
+	
+	/**
+	 * Creates a replay at the start of a recording.
+	 * 
+	 * @param recording Recording to replay.
+	 */
+	public Replay(Recording recording) {
+		this.recording = recording;
+		rewind();
+	}
+	
+	/**
+	 * Replays the next recorded step.
+	 * 
+	 * @return False if there are no more steps.
+	 */
+	public boolean step() {
+		if (position >= recording.steps()) {
+			return false;
+		}
+		
+		simulation.replayStep(recording, position);
+		position++;
+		
+		return true;
+	}
+	
+	/**
+	 * Moves the replay to this step of the recording.
+	 * (or to the last one, if the recording is shorter)
+	 * 
+	 * @param step Number of recorded steps to go through. (at least 0)
+	 */
+	public void seek(int step) {
+		if (step < position) {
+			rewind();
+		}
+		
+		while (position < step && step()) {
+			// Stepping.
+		}
+	}
+	
+	/**
+	 *  Goes back to the start of the recording.
+	 */
+	private void rewind() {
+		try {
+			simulation = Simulation.readFrom(new DataInputStream(new ByteArrayInputStream(recording.start())), null);
+		} catch (IOException e) {
+			// Written by a recorder, so it's always valid.
+			throw new UncheckedIOException(e);
+		}
+		
+		position = 0;
+	}
+	
+	/**
+	 * Returns the replayed simulation. A new one is created when the replay goes back,
+	 * so it should not be kept. It must not be stepped on its own - it has no genotypes.
+	 * 
+	 * @return The simulation at the current step.
+	 */
+	public Simulation getSimulation() {
+		return simulation;
+	}
+	
+	/**
+	 * Returns how many recorded steps have been replayed.
+	 * 
+	 * @return Current step of the replay.
+	 */
+	public int getPosition() {
+		return position;
+	}
+	
+	/**
+	 * Returns the recording.
+	 * 
+	 * @return The recording.
+	 */
+	public Recording getRecording() {
+		return recording;
+	}
+}
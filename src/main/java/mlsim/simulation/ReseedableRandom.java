@@ -0,0 +1,54 @@
+package mlsim.simulation;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * ReseedableRandom is a SplitMix64 generator that can be restarted with a new seed,
+ * so one instance can serve many agents without allocating a generator for each.
+ * 
+ * After reseed(s) it returns the same numbers as new SplittableRandom(s).
+ *
+ * @author bingis_khan
+ *
+ */
+class ReseedableRandom implements RandomGenerator {
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	
+	private long seed;
+	
+	/**
+	 * Restarts this generator.
+	 * 
+	 * @param newSeed The seed.
+	 */
+	void reseed(long newSeed) {
+		seed = newSeed;
+	}
+	
+	/**
+	 * Returns the current state. reseed() with it continues
+	 * the stream from the same point.
+	 * 
+	 * @return The state.
+	 */
+	long state() {
+		return seed;
+	}
+	
+	@Override
+	public long nextLong() {
+		long z = (seed += GOLDEN_GAMMA);
+		
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+	
+	@Override
+	public int nextInt() {
+		long z = (seed += GOLDEN_GAMMA);
+		
+		z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+		return (int)(((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+	}
+}
@@ -1,10 +1,7 @@
 package mlsim.simulation;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
-import mlsim.util.Tuple;
 import mlsim.wrapper.GAWrapper;
 
 /**
@@ -16,27 +13,52 @@ import mlsim.wrapper.GAWrapper;
  */
 public class Results<Genotype> {
 	private final List<GAWrapper> genotypes;
-	private final List<Integer> fitnessScores;
+	
+	// Fitness of every genotype, by id. (0 until its agent dies)
+	private final int[] fitnessScores;
+	
+	// What every agent did. (null if the simulation did not collect it)
+	private AgentStatistics statistics = null;
 	
 	Results(List<GAWrapper> genotypes) {
 		this.genotypes = genotypes;
-		fitnessScores = new ArrayList<>();
-		
-		// Fill it with default values, otherwise set will throw an exception. 
-		for (int i = 0; i < genotypes.size(); i++) {
-			fitnessScores.add(0);
-		}
+		fitnessScores = new int[genotypes.size()];
 	}
 	
 	/**
-	 * Returns the fitness of these genotypes.
+	 * Returns the fitness of these genotypes. The array itself is returned,
+	 * so it should not be changed.
 	 * 
-	 * @return List with the genotypes' fitness.
+	 * @return Array with the genotypes' fitness, by id.
 	 */
-	public List<Integer> fitness() {
+	public int[] fitness() {
 		return fitnessScores;
 	}
 	
+	/**
+	 * Returns the fitness of the genotype with this id.
+	 * 
+	 * @param id Id of the genotype.
+	 * @return Its fitness.
+	 */
+	public int fitness(int id) {
+		return fitnessScores[id];
+	}
+	
+	/**
+	 * Returns the statistics of every agent, if the simulation collected them.
+	 * (see SimulationFactory.setAgentStatistics())
+	 * 
+	 * @return Statistics or null if they were off.
+	 */
+	public AgentStatistics statistics() {
+		return statistics;
+	}
+	
+	void setStatistics(AgentStatistics statistics) {
+		this.statistics = statistics;
+	}
+	
 	/**
 	 * Returns the genotypes used in the original simulation.
 	 * 
@@ -55,6 +77,6 @@ public class Results<Genotype> {
 	 * @param fitness Its fitness.
 	 */
 	void appendGenotype(int id, int fitness) {
-		fitnessScores.set(id, fitness);
+		fitnessScores[id] = fitness;
 	}
 }
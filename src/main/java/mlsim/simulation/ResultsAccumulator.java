@@ -0,0 +1,161 @@
+package mlsim.simulation;
+
+import java.util.List;
+
+import mlsim.wrapper.GAWrapper;
+
+/**
+ * ResultsAccumulator merges the results of many simulations of the same population
+ * into the mean fitness of every genotype, along with its variance - so it's known
+ * how much a mean can be trusted. (see standardError())
+ *
+ * Only the sums of the scores and of their squares are kept, as longs. They're exact,
+ * so the accumulated results do not depend on the order in which simulations are added.
+ * Every method is synchronized, so simulations running on different threads can add
+ * their results as soon as they finish.
+ *
+ * @author bingis_khan
+ *
+ */
+public class ResultsAccumulator {
+	private final List<GAWrapper> genotypes;
+	
+	// Sum of the scores and of their squares for every genotype, by id.
+	private final long[] sums, squares;
+	private int runs = 0;
+	
+	/**
+	 * Creates an empty accumulator for this population.
+	 * 
+	 * @param genotypes Genotypes of the simulations.
+	 */
+	public ResultsAccumulator(List<GAWrapper> genotypes) {
+		this.genotypes = genotypes;
+		
+		sums = new long[genotypes.size()];
+		squares = new long[genotypes.size()];
+	}
+	
+	/**
+	 * Adds the results of a single simulation.
+	 * 
+	 * @param results Results of a simulation of the same population.
+	 */
+	public synchronized void add(Results<GAWrapper> results) {
+		int[] fitness = results.fitness();
+		
+		if (fitness.length != sums.length) {
+			throw new IllegalArgumentException("Expected results of " + sums.length + " genotypes, got " + fitness.length + ".");
+		}
+		
+		for (int id = 0; id < fitness.length; id++) {
+			long score = fitness[id];
+			
+			sums[id] += score;
+			squares[id] += score * score;
+		}
+		
+		runs++;
+	}
+	
+	/**
+	 * Adds every simulation of another accumulator (of the same population).
+	 * 
+	 * @param other Other accumulator.
+	 */
+	public void merge(ResultsAccumulator other) {
+		long[] otherSums, otherSquares;
+		int otherRuns;
+		
+		// Copied first, so the two are never locked at the same time.
+		synchronized (other) {
+			otherSums = other.sums.clone();
+			otherSquares = other.squares.clone();
+			otherRuns = other.runs;
+		}
+		
+		synchronized (this) {
+			if (otherSums.length != sums.length) {
+				throw new IllegalArgumentException("Cannot merge results of " + otherSums.length + " genotypes into " + sums.length + ".");
+			}
+			
+			for (int id = 0; id < sums.length; id++) {
+				sums[id] += otherSums[id];
+				squares[id] += otherSquares[id];
+			}
+			
+			runs += otherRuns;
+		}
+	}
+	
+	/**
+	 * Returns the number of simulations added so far.
+	 * 
+	 * @return Number of simulations.
+	 */
+	public synchronized int runs() {
+		return runs;
+	}
+	
+	/**
+	 * Returns the genotypes of the simulations.
+	 * 
+	 * @return List of genotypes.
+	 */
+	public List<GAWrapper> genotypes() {
+		return genotypes;
+	}
+	
+	/**
+	 * Returns the mean fitness of the genotype with this id.
+	 * 
+	 * @param id Id of the genotype.
+	 * @return Its mean fitness. (0 without any simulations)
+	 */
+	public synchronized double mean(int id) {
+		return runs == 0 ? 0 : sums[id] / (double)runs;
+	}
+	
+	/**
+	 * Returns the mean fitness of every genotype.
+	 * 
+	 * @return Array of means, by id.
+	 */
+	public synchronized double[] means() {
+		double[] means = new double[sums.length];
+		for (int id = 0; id < means.length; id++) {
+			means[id] = mean(id);
+		}
+		
+		return means;
+	}
+	
+	/**
+	 * Returns the (sample) variance of the fitness of the genotype with this id.
+	 * 
+	 * @param id Id of the genotype.
+	 * @return Its variance. (0 with less than two simulations)
+	 */
+	public synchronized double variance(int id) {
+		if (runs < 2) {
+			return 0;
+		}
+		
+		double mean = mean(id),
+			   deviations = squares[id] - mean * sums[id];
+		
+		// Rounding may take it slightly below 0 when every score was the same.
+		return Math.max(deviations, 0) / (runs - 1);
+	}
+	
+	/**
+	 * Returns the standard error of the mean fitness of the genotype with this id.
+	 * The true mean lies within about two standard errors of it 95% of the time.
+	 * 
+	 * @param id Id of the genotype.
+	 * @return Standard error of its mean.
+	 */
+	public synchronized double standardError(int id) {
+		return runs == 0 ? 0 : Math.sqrt(variance(id) / runs);
+	}
+}
@@ -0,0 +1,24 @@
+package mlsim.simulation;
+
+import mlsim.util.IntList;
+
+/**
+ * ScalarEnergyKernel is the plain loop version of the EnergyKernel,
+ * used when the Vector API is not available.
+ * 
+ * @author bingis_khan
+ *
+ */
+class ScalarEnergyKernel implements EnergyKernel {
+	
+	@Override
+	public void burn(int[] food, int[] upkeep, int size, IntList starved) {
+		for (int slot = 0; slot < size; slot++) {
+			food[slot] -= upkeep[slot];
+			
+			if (food[slot] <= 0) {
+				starved.add(slot);
+			}
+		}
+	}
+}
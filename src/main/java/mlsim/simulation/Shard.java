@@ -0,0 +1,58 @@
+package mlsim.simulation;
+
+import mlsim.util.IntList;
+
+/**
+ * A Shard is a horizontal strip of a simulation's plane (rows [top, bottom)).
+ * In a sharded simultaneous step, every shard is handled by its own worker.
+ * A worker only changes the cells in its shard's rows and the agents
+ * that moved onto them, so shards can be processed at the same time.
+ * 
+ * Agents which move across the border of a shard are handed over
+ * to the neighbouring shard. (its incoming lists)
+ * 
+ * @author bingis_khan
+ *
+ */
+class Shard {
+	final int top, bottom;
+	
+	// Slots of agents on this shard's rows at the start of a step.
+	final IntList owned = new IntList();
+	
+	// Slots of agents which moved onto this shard's rows this step,
+	// by where they came from. Each list is written by only one shard.
+	final IntList fromAbove = new IntList(),
+				  stayed = new IntList(),
+				  fromBelow = new IntList();
+	
+	// Cells (y * width + x) on which food was eaten this step.
+	final IntList eaten = new IntList();
+	
+	// Set if one of this shard's agents chose a random move this step.
+	boolean movedRandomly = false;
+	
+	// View given to this shard's agents when they choose their moves,
+	// and its random numbers. (reseeded for every agent)
+	final SimulationState state;
+	final ReseedableRandom random;
+	
+	Shard(int top, int bottom, SimulationState state, ReseedableRandom random) {
+		assert top < bottom : "A shard must have at least one row.";
+		
+		this.top = top;
+		this.bottom = bottom;
+		this.state = state;
+		this.random = random;
+	}
+	
+	/**
+	 * Clears the lists of incoming agents before a step.
+	 */
+	void clearIncoming() {
+		fromAbove.clear();
+		stayed.clear();
+		fromBelow.clear();
+		eaten.clear();
+	}
+}
@@ -1,11 +1,19 @@
 package mlsim.simulation;
 
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Random;
-import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
 
+import jdk.jfr.FlightRecorder;
+import mlsim.simulation.AgentStatistics.Death;
+import mlsim.simulation.SimulationMetrics.Phase;
+import mlsim.util.IntList;
+import mlsim.util.RadixSort;
 import mlsim.wrapper.GAWrapper;
 
 
@@ -18,6 +26,11 @@ import mlsim.wrapper.GAWrapper;
  * Total number of food samples is calculated as follows: round(foodPerAgents x numAgents)
  * A simulation also needs the solutions themselves to control the agents.
  * 
+ * Agents can move one after another or all at once. (see StepMode)
+ * In the latter case, the plane is cut into shards, which are processed in parallel.
+ * In the former, agents far from everything else can make macro-steps - keep making
+ * the same move for a few turns without deciding again. (see settle())
+ * 
  * 
  * @author bingis_khan
  *
@@ -28,16 +41,112 @@ public class Simulation {
 	// The number of this simulation's steps.
 	private int steps = 1;
 	
-	private final List<Food> food;
-	private final List<Agent<GAWrapper>> agents;
+	// Food samples, kept in a bitset. (or a sorted array on sparse planes)
+	private final FoodLayer food;
+	
+	// Agents' state, kept in parallel arrays.
+	private final AgentStore store;
+	
+	// Index of every agent by its coordinates.
+	private final OccupancyGrid grid;
+	
+	// Read-only view of this simulation, given to agents when they choose their moves.
+	private final SimulationState state;
+	
+	// Food samples that grow back every step, and the part of a sample
+	// which did not grow yet. (fractional rates add up over steps)
+	private final double foodRegrowth;
+	private double foodToGrow = 0;
+	
+	// Cells without food, from which regrown food is picked. (null without regrowth)
+	private final FreeCells freeCells;
+	
+	// Number of steps after which the simulation is stopped. (0 means no limit)
+	private final int maxSteps;
+	
+	// Cycle detection (see repeats()). The food part of the world's hash is updated
+	// whenever food changes, the agents' part is computed every step.
+	private final boolean detectCycles;
+	private long foodHash = 0;
+	private long savedHash;
+	private int sinceSaved = 0, cycleWindow = 1;
+	
+	// Set when an agent moves randomly, until the step ends. (see repeats())
+	private boolean randomStep = false;
+	
+	// This simulation's own random number stream. (placement and random moves)
+	// It's not a SplittableRandom, because its state has to be saved in checkpoints.
+	private final ReseedableRandom rand;
+	
+	// Random numbers for food regrowth. Separate from rand, so a replay
+	// (which does not make agents' random moves) grows food on the same cells.
+	private final ReseedableRandom growthRandom = new ReseedableRandom();
+	
+	// Counters and phase times. Null when they're off, so it's the same as with listeners.
+	private final SimulationMetrics metrics;
+	
+	// What every agent did, along with the results. Null when it's off, like metrics.
+	private final boolean collectsStatistics;
+	private AgentStatistics statistics = null;
+	
+	// Flight recorder event of this simulation, until it ends. (see SimulationEvent)
+	private SimulationEvent event;
+	
+	// Told about every event. Null when there are no listeners, so then
+	// the only cost is a null check. (a ListenerList if there's more than one)
+	private SimulationListener listener = null;
+	
+	// Moves of the current step are taken from here (from this index on)
+	// instead of the genotypes while replaying. (see Replay)
+	private Recording replay = null;
+	private int replayed;
+	
+	// How agents move during a step.
+	private final StepMode mode;
+	
+	// Longest macro-step: how many turns in a row an agent can skip deciding.
+	// (0 when they're off - always in simultaneous mode)
+	private final int macroSteps;
+	
+	// Cells where food changed in the previous step and in this one, so agents
+	// making macro-steps can tell if they have to decide again. (only kept with macro-steps)
+	private IntList changedBefore = new IntList(),
+					changed = new IntList();
+	
+	// Used to derive agents' random decisions and fight tie-breaks
+	// in simultaneous mode. (0 in sequential mode, where it's not used)
+	private long seed = 0;
+	
+	// Moves proposed in the first phase of a simultaneous step.
+	private final Move[] proposals;
+	
+	// Horizontal strips of the plane, which are processed in parallel
+	// in simultaneous mode. (null in sequential mode)
+	private final Shard[] shards;
+	
+	// Index of the shard every row belongs to.
+	private final int[] shardOfRow;
+	
+	// True if the grid and the food only index occupied cells. (see CollisionBackend)
+	private final boolean sparse;
+	
+	// Cells and slots of the agents in a simultaneous step on a sparse plane,
+	// sorted by the cells. (see sortMoves(), null otherwise)
+	private final int[] sortedCells, sortedSlots;
+	private final RadixSort sorter;
 	
-	private static final Random rand = new Random();
+	// Slots of agents left without food in this step. (see subtractFood())
+	private final IntList starving = new IntList();
 	
-	// A set for agents marked for removal.
-	private final Set<Entity> marked = new HashSet<>();
+	// Results for tracking the scores of agents' genotypes. (a new one after reset())
+	private Results<GAWrapper> results;
 	
-	// Results for tracking the scores of agents' genotypes.
-	private final Results<GAWrapper> results;
+	// Food samples placed per agent.
+	private final double foodPerAgent;
+	
+	// Cells swapped while picking random cells. (see randomCells())
+	private final CellMap swapped = new CellMap(16);
+	private int[] picked = new int[0];
 	
 	// Used for assigning ids.
 	private int nextId = 0;
@@ -51,9 +160,20 @@ public class Simulation {
 	
 	private static final float PER_SIZE_PENALTY = ENERGY_SUB_PER_STEP / (float)4;
 	
+	// Subtracts energy and finds starved agents - with the Vector API, if it's there.
+	private static final EnergyKernel ENERGY = EnergyKernel.create();
+	
+	// Start of every checkpoint (the letters MLSC) and the version of its format.
+	private static final int CHECKPOINT_MAGIC = 0x4D4C5343,
+							 CHECKPOINT_VERSION = 4;
+	
+	// Make the hash keys of agents and food different.
+	private static final long AGENT_SALT = 0x5851f42d4c957f2dL,
+							  FOOD_SALT = 0x14057b7ef767814fL;
+	
 	
 	/**
-	 * Creates a new simulation with given parameters.
+	 * Creates a new sequential simulation with given parameters.
 	 * 
 	 * @param width Width if the plane.
 	 * @param height Height of the plane.
@@ -61,297 +181,1340 @@ public class Simulation {
 	 * @param genotypes Genotypes themselves that will dictate agent movement.
 	 */
 	Simulation(int width, int height, double foodPerAgent, List<GAWrapper> genotypes) {
-		this.width = width;
-		this.height = height;
+		this(new SimulationFactory(width, height, foodPerAgent), genotypes, new SplittableRandom());
+	}
+	
+	/**
+	 * Creates a new simulation with the parameters of a factory.
+	 * 
+	 * @param parameters Factory with this simulation's parameters.
+	 * @param genotypes Genotypes themselves that will dictate agent movement.
+	 * @param random Random number stream. (only its next number is used, to seed this simulation's own)
+	 */
+	Simulation(SimulationFactory parameters, List<GAWrapper> genotypes, SplittableRandom random) {
+		this(parameters, genotypes, random.nextLong());
+		populate(genotypes);
+	}
+		
+	/**
+	 * Creates a new simulation from a pre-generated layout. (see Layout)
+	 * 
+	 * @param parameters Factory with this simulation's parameters.
+	 * @param genotypes Genotypes themselves that will dictate agent movement.
+	 * @param layout Start of this simulation. It has to fit the parameters and genotypes.
+	 */
+	Simulation(SimulationFactory parameters, List<GAWrapper> genotypes, Layout layout) {
+		// The random stream is set by populate().
+		this(parameters, genotypes, 0);
+		populate(genotypes, layout);
+	}
+		
+	/**
+	 * Turns this simulation into a new one with other genotypes (at most as many
+	 * as it was created with) and random numbers, but the same parameters.
+	 * It reuses every buffer, so it's the same as creating a new simulation
+	 * with the factory, only without the garbage. (see SimulationPool)
+	 * 
+	 * Listeners are removed. Results of the previous simulation stay valid.
+	 * 
+	 * @param genotypes Genotypes that will dictate agent movement.
+	 * @param random Random number stream. (only its next number is used, to seed this simulation's own)
+	 */
+	public void reset(List<GAWrapper> genotypes, SplittableRandom random) {
+		clear(genotypes);
+		
+		rand.reseed(random.nextLong());
+		populate(genotypes);
+	}
+	
+	/**
+	 * Same as reset(genotypes, random), but the new simulation starts from a layout.
+	 * 
+	 * @param genotypes Genotypes that will dictate agent movement.
+	 * @param layout Start of the new simulation. It has to fit its parameters and genotypes.
+	 */
+	public void reset(List<GAWrapper> genotypes, Layout layout) {
+		clear(genotypes);
+		populate(genotypes, layout);
+	}
+	
+	/**
+	 *  Removes everything from this simulation, so it can hold these genotypes next.
+	 */
+	private void clear(List<GAWrapper> genotypes) {
+		if (!canHold(genotypes)) {
+			throw new IllegalArgumentException("This simulation can hold only " + store.capacity()
+					+ " agents, got " + genotypes.size() + ".");
+		}
+		
+		// Clean the plane. The grid only has agents, which are still in the store.
+		for (int slot = 0, size = store.size(); slot < size; slot++) {
+			grid.removeAgent(slot, store.x[slot], store.y[slot]);
+		}
+		
+		store.truncate(0);
+		food.clear();
+		if (freeCells != null) {
+			freeCells.clear();
+		}
+		
+		steps = 1;
+		nextId = 0;
+		foodToGrow = 0;
+		foodHash = 0;
+		sinceSaved = 0;
+		cycleWindow = 1;
+		seed = 0;
+		listener = null;
+		if (metrics != null) {
+			metrics.clear();
+		}
+		
+		newResults(genotypes);
+	}
+	
+	/**
+	 * Checks if this simulation can be reset with these genotypes.
+	 * 
+	 * @param genotypes Genotypes.
+	 * @return True if there are not too many of them.
+	 */
+	public boolean canHold(List<GAWrapper> genotypes) {
+		return genotypes.size() <= store.capacity();
+	}
+	
+	/**
+	 *  Places agents and food on random cells of the (empty) plane.
+	 */
+	private void populate(List<GAWrapper> genotypes) {
+		int foodAmount = calculateFoodAmount(foodPerAgent, genotypes.size());
+		checkFits(width, height, genotypes.size(), foodAmount);
+		
+		// Every agent and food sample gets its own cell. Agents take the first ones.
+		int[] cells = randomCells(genotypes.size() + foodAmount);
+		populate(genotypes, cells, foodAmount);
+	}
+	
+	/**
+	 *  Places agents and food on the (empty) plane as in a layout,
+	 *  and continues the random stream from where it does.
+	 */
+	private void populate(List<GAWrapper> genotypes, Layout layout) {
+		if (!layout.fits(width, height, foodPerAgent, genotypes.size())) {
+			throw new IllegalArgumentException("The layout does not fit " + genotypes.size() + " agents on a "
+					+ width + "x" + height + " plane with " + foodPerAgent + " food per agent.");
+		}
+		
+		rand.reseed(layout.randomState);
+		populate(genotypes, layout.cells, layout.foodAmount);
+	}
+	
+	/**
+	 *  Places agents and food on these cells and gets
+	 *  everything ready for the first step.
+	 */
+	private void populate(List<GAWrapper> genotypes, int[] cells, int foodAmount) {
+		placeAgents(genotypes, cells);
+		placeFood(cells, genotypes.size(), foodAmount);
+		
+		// The pool is only needed (and paid for) if food grows back.
+		if (freeCells != null) {
+			freeCells.fill();
+			for (int i = genotypes.size(); i < genotypes.size() + foodAmount; i++) {
+				freeCells.remove(cells[i]);
+			}
+		}
+		
+		savedHash = detectCycles ? worldHash() : 0;
+		
+		if (mode == StepMode.SIMULTANEOUS) {
+			seed = rand.nextLong();
+			distributeAgents();
+		}
+		
+		if (foodRegrowth > 0) {
+			growthRandom.reseed(rand.nextLong());
+		}
+
+		// Food placed so far is not a change anyone has to see.
+		changedBefore.clear();
+		changed.clear();
+
+		startEvent();
+	}
+	
+	/**
+	 *  Creates an empty simulation - without agents or food.
+	 *  (they're placed by the other constructor or read from a checkpoint)
+	 */
+	private Simulation(SimulationFactory parameters, List<GAWrapper> genotypes, long randomState) {
+		rand = new ReseedableRandom();
+		rand.reseed(randomState);
 		
-		food = new ArrayList<>();
-		agents = new ArrayList<>();
+		width = parameters.getWidth();
+		height = parameters.getHeight();
+		mode = parameters.getStepMode();
+		macroSteps = mode == StepMode.SEQUENTIAL ? parameters.getMacroSteps() : 0;
+		maxSteps = parameters.getMaxSteps();
+		foodRegrowth = parameters.getFoodRegrowth();
+		// Regrown food is random too, so a world where it grows never repeats for sure.
+		detectCycles = parameters.detectsCycles() && foodRegrowth == 0;
+		foodPerAgent = parameters.getFoodPerAgent();
+		metrics = parameters.collectsMetrics() ? new SimulationMetrics() : null;
 		
-		placeAgents(genotypes); // Must be called BEFORE placing food, because it does not check for possible food placement.
-		placeFood(calculateFoodAmount(foodPerAgent, agents.size()));
+		if ((long)width * height > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("A plane can have at most " + Integer.MAX_VALUE
+					+ " cells, got " + width + "x" + height + ".");
+		}
+		
+		sparse = parameters.isSparse(genotypes.size());
+		food = FoodLayer.create(width, height, sparse);
+		store = new AgentStore(genotypes.size());
+		grid = OccupancyGrid.create(width, height, genotypes.size(), sparse);
+		state = new SimulationState(store, grid, food, rand);
+		
+		// Sparse planes pick free cells at random instead. (see randomFreeCell())
+		freeCells = foodRegrowth > 0 && !sparse ? new FreeCells(width * height) : null;
 		
 		// Create results object.
+		collectsStatistics = parameters.collectsAgentStatistics();
+		newResults(genotypes);
+		
+		if (mode == StepMode.SIMULTANEOUS) {
+			proposals = new Move[genotypes.size()];
+			
+			// Cut the plane into strips of (almost) the same height.
+			int count = Math.max(1, Math.min(parameters.getShards(), height));
+			shards = new Shard[count];
+			shardOfRow = new int[height];
+			
+			for (int i = 0; i < count; i++) {
+				// Every shard has its own view, whose random numbers are reseeded for every agent.
+				ReseedableRandom agentRandom = new ReseedableRandom();
+				SimulationState frozen = new SimulationState(store, grid, food, agentRandom);
+				
+				shards[i] = new Shard(i * height / count, (i + 1) * height / count, frozen, agentRandom);
+				Arrays.fill(shardOfRow, shards[i].top, shards[i].bottom, i);
+			}
+		} else {
+			proposals = null;
+			shards = null;
+			shardOfRow = null;
+		}
+
+		if (mode == StepMode.SIMULTANEOUS && sparse) {
+			sortedCells = new int[genotypes.size()];
+			sortedSlots = new int[genotypes.size()];
+			sorter = new RadixSort();
+		} else {
+			sortedCells = null;
+			sortedSlots = null;
+			sorter = null;
+		}
+	}
+	
+	
+	/**
+	 *  Creates empty results (with statistics, if they're collected) for these genotypes.
+	 */
+	private void newResults(List<GAWrapper> genotypes) {
 		results = new Results<>(genotypes);
+		
+		if (collectsStatistics) {
+			statistics = new AgentStatistics(genotypes.size());
+			results.setStatistics(statistics);
+		}
+	}
+	
+	/**
+	 *  Calculates the amount of food to place.
+	 */
+	static int calculateFoodAmount(double foodPerAgent, int numAgents) {
+		return (int)Math.round(foodPerAgent * numAgents);
+	}
+	
+	/**
+	 *  Throws an exception if this many agents and food samples
+	 *  do not fit on a plane of this size.
+	 */
+	static void checkFits(int width, int height, int agents, int foodAmount) {
+		if ((long)agents + foodAmount > (long)width * height) {
+			throw new IllegalArgumentException("Cannot fit " + agents + " agents and " + foodAmount
+					+ " food samples on a " + width + "x" + height + " plane.");
+		}
+	}
+	
+	
+	/**
+	 *  Picks this many different random cells (as indexes: y * width + x)
+	 *  in random order. (see randomCells(rand, cellCount, swapped, picked, amount))
+	 *  The returned array is reused. (only the first amount cells are valid)
+	 */
+	private int[] randomCells(int amount) {
+		if (picked.length < amount) {
+			picked = new int[amount];
+		}
+		
+		return randomCells(rand, width * height, swapped, picked, amount);
+	}
+	
+	/**
+	 *  Picks this many different random cells into picked. It's a partial Fisher-Yates
+	 *  shuffle of every cell on the plane, but only the positions which were swapped
+	 *  are remembered (in swapped, which is cleared first) - the rest still have their own cells.
+	 *  So it costs O(amount), no matter how big the plane is. Also used for layouts. (see Layout)
+	 */
+	static int[] randomCells(ReseedableRandom rand, int cellCount, CellMap swapped, int[] picked, int amount) {
+		swapped.clear();
+		
+		for (int i = 0; i < amount; i++) {
+			int j = i + rand.nextInt(cellCount - i),
+				atJ = swapped.get(j),
+				atI = swapped.get(i);
+			
+			// Position i is never looked at again, so only j has to remember its new cell.
+			picked[i] = atJ == CellMap.ABSENT ? j : atJ;
+			swapped.put(j, atI == CellMap.ABSENT ? i : atI);
+		}
+		
+		return picked;
+	}
+	
+	
+	/**
+	 * Method used to place agents on the simulation plane.
+	 * 
+	 * @param genotypes Genotypes to be turned into agents.
+	 * @param cells Free cells. The first genotypes.size() are used.
+	 */
+	private void placeAgents(List<GAWrapper> genotypes, int[] cells) {
+		for (GAWrapper gtype : genotypes) {
+			// nextId is also the number of agents placed so far.
+			int x = cells[nextId] % width,
+				y = cells[nextId] / width;
+			
+			int slot = store.add(gtype, x, y, STARTING_ENERGY, nextId);
+			store.upkeep[slot] = energyPerStep(store.view(slot).getSize());
+			grid.putAgent(slot, x, y);
+			nextId++; // Looks ugly af.
+		}
+		
+		assert genotypes.size() == store.size() : "The amount of given genotypes"
+				+ " and created agents is not equal. Missed some?";
+	}
+	
+	
+	/**
+	 *  Places food on the simulation plane, on this many cells from this index onwards.
+	 *  The cells are different, so two food samples are never placed on the same coordinates.
+	 */
+	private void placeFood(int[] cells, int from, int amount) {
+		for (int i = from; i < from + amount; i++) {
+			food.place(cells[i] % width, cells[i] / width);
+			foodChanged(cells[i]);
+		}
+	}
+	
+	/**
+	 *  Energy an agent of this size loses every step.
+	 */
+	private static int energyPerStep(int size) {
+		int penalty = 0;
+		
+		// Penalty if an organism is too big.
+		if (size > SIZE_THRESHOLD) {
+			penalty = Math.round((size - SIZE_THRESHOLD) * PER_SIZE_PENALTY);
+		}
+		
+		return ENERGY_SUB_PER_STEP + penalty;
+	}
+	
+	/**
+	 *  Checks if this simulation ended (when all agents are removed).
+	 * 
+	 * @return True if ended, false otherwise.
+	 */
+	public boolean ended() {
+		return store.size() == 0;
+	}
+	
+	
+	/**
+	 *  Computes a single step of this simulation.
+	 * 
+	 *  A single step is composed of:
+	 *   - agent movement
+	 *   - taking care of out-of-bounds agents
+	 *   - fights (agents which lost are turned to food)
+	 *   - eating food (which includes dead agents turned to food)
+	 *   - subtraction of energy
+	 *   - removal of starved agents
+	 * 
+	 *  Energy and starvation are done for all agents at once after everyone has moved.
+	 *  (An agent that starved can only be stepped on by a later mover, so the
+	 *   outcome is the same as doing it right after its move. applyMove() counts
+	 *   such an agent as starved, not killed.)
+	 *  
+	 *  The simulation is stopped early (every agent is removed, see stop()) when it
+	 *  reaches the step limit or, if cycle detection is on, when the world repeats.
+	 */
+	public void step() {
+		
+		if (mode == StepMode.SIMULTANEOUS) {
+			long time = clock();
+			proposeMoves();
+			lap(Phase.DECIDE, time);
+		} else {
+			for (int slot = 0; slot < store.size(); slot++) {
+				// Already removed, so leave it.
+				if (isMarked(slot)) {
+					continue;
+				}
+				
+				moveAgent(slot);
+			}
+		}
+
+		endStep();
+	}
+
+	/**
+	 *  Finishes a step after every agent has chosen its move.
+	 */
+	private void endStep() {
+		long time = clock();
+		
+		if (mode == StepMode.SIMULTANEOUS) {
+			applyMoves();
+			time = lap(Phase.MOVE, time);
+		} else {
+			// The meals were already counted by consume().
+			food.taken(0);
+		}
+		
+		subtractFood();
+		starve();
+		time = lap(Phase.ENERGY, time);
+		
+		removeDead();
+		
+		steps++;
+		
+		if (!ended()) {
+			if (detectCycles && repeats()) {
+				stop(true);
+			} else if (maxSteps > 0 && steps > maxSteps) {
+				stop(false);
+			}
+		}
+		
+		if (ended()) {
+			endEvent();
+		}
+		
+		if (mode == StepMode.SIMULTANEOUS) {
+			distributeAgents();
+		}
+		
+		time = lap(Phase.REMOVAL, time);
+		
+		if (foodRegrowth > 0 && !ended()) {
+			growFood();
+			lap(Phase.GROWTH, time);
+		}
+		
+		if (macroSteps > 0) {
+			// Every agent has seen the changes before this step by now.
+			IntList seen = changedBefore;
+			changedBefore = changed;
+			changed = seen;
+			changed.clear();
+		}
+		
+		if (metrics != null) {
+			metrics.steps++;
+		}
+		
+		if (listener != null) {
+			listener.stepped(this);
+		}
+		
+		randomStep = false;
+	}
+
+	/**
+	 *  Starts the flight recorder event of this simulation, now that it's ready.
+	 */
+	private void startEvent() {
+		// Loading the first event class starts up the whole recorder, which takes a while,
+		// so without a recording, there are no events. (the recorder is running if there's one)
+		if (!FlightRecorder.isInitialized()) {
+			event = null;
+			return;
+		}
+		
+		event = new SimulationEvent();
+		event.width = width;
+		event.height = height;
+		event.agents = store.size();
+		event.food = food.count();
+		event.mode = mode.toString();
+		
+		event.begin();
+	}
+	
+	/**
+	 *  Ends the flight recorder event once the simulation has ended.
+	 *  It's only written if a recording wants it.
+	 */
+	private void endEvent() {
+		if (event == null) {
+			return;
+		}
+		
+		event.end();
+		if (event.shouldCommit()) {
+			event.steps = steps;
+			event.commit();
+		}
+		
+		event = null;
+	}
+
+	/**
+	 *  Current time for the metrics, or 0 when they're off. (see lap())
+	 */
+	private long clock() {
+		return metrics != null ? System.nanoTime() : 0;
+	}
+
+	/**
+	 *  Adds the time since the last clock() or lap() to a phase of the metrics.
+	 *  Returns the current time, so the next phase can start from there.
+	 *  Without metrics, it's only a null check.
+	 */
+	private long lap(Phase phase, long since) {
+		if (metrics == null) {
+			return 0;
+		}
+		
+		long now = System.nanoTime();
+		metrics.time(phase, now - since);
+		
+		return now;
+	}
+	
+	/**
+	 *  Removes every agent that's still alive.
+	 *  
+	 *  When the step limit is reached, their score is the current step, so they're scored
+	 *  higher than the agents that died in the last step - as if they all died in the next one.
+	 *  When the world stalls, it's the step they would starve at, because they won't eat anymore.
+	 */
+	private void stop(boolean starveOut) {
+		for (int slot = 0, size = store.size(); slot < size; slot++) {
+			int score = steps;
+			if (starveOut) {
+				// Died in the first step that takes their energy to 0. (see starve())
+				score += (store.food[slot] + store.upkeep[slot] - 1) / Math.max(store.upkeep[slot], 1) - 1;
+			}
+			
+			grid.removeAgent(slot, store.x[slot], store.y[slot]);
+			results.appendGenotype(store.id[slot], Math.max(score, steps));
+			if (statistics != null) statistics.deaths[store.id[slot]] = Death.STOPPED;
+		}
+		
+		store.truncate(0);
+	}
+	
+	/**
+	 *  Checks if the world (agents' positions and food) is the same
+	 *  as in one of the earlier steps. Uses Brent's algorithm:
+	 *  the saved hash is replaced after 1, 2, 4, 8, ... steps, so any cycle is found
+	 *  at most about two of its lengths after it starts, with O(1) memory.
+	 *  
+	 *  Energy is left out - it only goes down when no food is eaten, so the world
+	 *  would never repeat. (agents don't sense it, so it does not change their moves)
+	 *  
+	 *  A random move could lead somewhere else from a repeated world, so only cycles
+	 *  without them count: after a step with a random move, the search starts over from it.
+	 *  (food regrowth is random too - simulations with it don't detect cycles at all)
+	 */
+	private boolean repeats() {
+		long hash = worldHash();
+		
+		if (randomStep) {
+			savedHash = hash;
+			sinceSaved = 0;
+			cycleWindow = 1;
+			
+			return false;
+		}
+		
+		if (hash == savedHash) {
+			return true;
+		}
+		
+		if (++sinceSaved == cycleWindow) {
+			savedHash = hash;
+			sinceSaved = 0;
+			cycleWindow = cycleWindow < (1 << 30) ? cycleWindow * 2 : cycleWindow;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 *  Zobrist-style hash of the world: a xor of random keys, one for every food sample
+	 *  and one for every agent (by its id and cell). Keys are computed by mix()
+	 *  instead of being kept in tables.
+	 */
+	private long worldHash() {
+		long hash = foodHash;
+		
+		for (int slot = 0, size = store.size(); slot < size; slot++) {
+			long cell = (long)store.y[slot] * width + store.x[slot];
+			hash ^= mix(mix(store.id[slot] + AGENT_SALT) ^ cell);
+		}
+		
+		return hash;
+	}
+	
+	/**
+	 *  Food appeared on or disappeared from this cell (y * width + x).
+	 */
+	private void foodChanged(int cell) {
+		if (detectCycles) {
+			foodHash ^= mix(cell + FOOD_SALT);
+		}
+		
+		if (macroSteps > 0) {
+			changed.add(cell);
+		}
+	}
+	
+	/**
+	 *  Moves a single agent and takes care of what happens after
+	 *  (going out of bounds, fighting and eating).
+	 */
+	private void moveAgent(int slot) {
+		// Lift it from the grid, so it does not collide with itself.
+		grid.removeAgent(slot, store.x[slot], store.y[slot]);
+		
+		long time = clock();
+		Move move;
+		
+		if (replay != null) {
+			move = replay.move(replayed++);
+		} else if (store.steady[slot] > 0 && stillSteady(slot)) {
+			// The same move as before, without asking. (see settle())
+			move = store.steadyMove[slot];
+			store.steady[slot]--;
+			if (metrics != null) metrics.skipped++;
+		} else {
+			long randomState = rand.state();
+			move = store.genotype[slot].evaluate(store.view(slot), getSimulationState());
+			
+			if (rand.state() != randomState) {
+				randomStep = true;
+				if (statistics != null) statistics.randomMoves[store.id[slot]]++;
+			}
+			
+			if (macroSteps > 0) {
+				settle(slot, move, randomState);
+			}
+		}
+		
+		time = lap(Phase.DECIDE, time);
+		
+		applyMove(slot, move);
+		lap(Phase.MOVE, time);
+	}
+
+	/**
+	 *  Macro-steps. After an agent has decided on a move, finds for how many of its next turns
+	 *  it would decide on the same one again, so it can skip deciding then. Its genotype has to be
+	 *  reactive (see Wrapper.isReactive()) and it must not have moved randomly. Then it's enough
+	 *  that nothing it senses changes in those turns:
+	 *   - It moves straight towards the closest food, so that food stays the closest one
+	 *     (no other food gets closer faster) and in the same direction, and is at least
+	 *     2 cells away - so there's no food next to it either. (no food at all stays that way)
+	 *   - No other agent gets next to it. Both move one cell per turn,
+	 *     so the closest one must be at least 2 * turns + 2 cells away now.
+	 *  Food that grows or gets eaten in the meantime is checked in every turn. (see stillSteady())
+	 *  
+	 *  The moves themselves are made like any other (with fights, meals and leaving the plane),
+	 *  and energy is taken from everyone anyway, so a simulation ends the same way as without macro-steps.
+	 */
+	private void settle(int slot, Move move, long randomState) {
+		store.steady[slot] = 0;
+		
+		if (rand.state() != randomState || !store.genotype[slot].isReactive()) {
+			return;
+		}
+		
+		int x = store.x[slot],
+			y = store.y[slot],
+			target = state.nearestFoodCell(x, y), // Cached from the genotype's evaluation.
+			turns = macroSteps;
+		
+		if (target != -1) {
+			turns = Math.min(turns, turnsTowards(move, target % width - x, target / width - y));
+		}
+		
+		if (turns > 0) {
+			turns = Math.min(turns, (grid.nearestAgent(x, y, 2 * turns + 1) - 2) / 2);
+		}
+		
+		if (turns > 0) {
+			store.steady[slot] = turns;
+			store.steadyMove[slot] = move;
+			store.target[slot] = target;
+			store.seen[slot] = changed.size();
+		}
+	}
+
+	/**
+	 *  Number of turns an agent can keep making this move towards food (dx, dy) away,
+	 *  while the food stays in the same direction (see Wrapper.moveBalanced())
+	 *  and at least 2 cells away. 0 if the move does not go towards it.
+	 */
+	private static int turnsTowards(Move move, int dx, int dy) {
+		int xDist = Math.abs(dx),
+			yDist = Math.abs(dy),
+			closer;
+		boolean alongX = move == Move.WEST || move == Move.EAST;
+		
+		switch (move) {
+			case NORTH: closer = -dy; break;
+			case SOUTH: closer = dy; break;
+			case WEST:  closer = -dx; break;
+			default:    closer = dx; break;
+		}
+		
+		int turns = Math.min(closer, xDist + yDist - 2);
+		
+		// The direction is along the longer distance, so if it's the one getting shorter, it has to stay longer.
+		if (alongX && xDist > yDist) {
+			turns = Math.min(turns, xDist - yDist - 1);
+		} else if (!alongX && xDist <= yDist) {
+			turns = Math.min(turns, yDist - xDist);
+		}
+		
+		return Math.max(turns, 0);
+	}
+
+	/**
+	 *  Checks if an agent making macro-steps can go on. It has to decide again when
+	 *  food changed at least as close to it as the food it's heading for (or anywhere,
+	 *  if there was none) since its last turn - that food could be gone or not the closest anymore.
+	 */
+	private boolean stillSteady(int slot) {
+		for (int n = store.seen[slot], size = changedBefore.size(); n < size; n++) {
+			if (disturbs(slot, changedBefore.get(n))) {
+				return false;
+			}
+		}
+		
+		for (int n = 0, size = changed.size(); n < size; n++) {
+			if (disturbs(slot, changed.get(n))) {
+				return false;
+			}
+		}
+		
+		store.seen[slot] = changed.size();
+		return true;
+	}
+
+	/**
+	 *  Checks if food changing on this cell (y * width + x) may change what an agent making macro-steps senses.
+	 */
+	private boolean disturbs(int slot, int cell) {
+		int target = store.target[slot];
+		
+		if (target == -1) {
+			return true;
+		}
+		
+		int x = store.x[slot],
+			y = store.y[slot];
+		
+		return distance(x, y, cell) <= distance(x, y, target);
+	}
+
+	/**
+	 *  Taxicab distance from these coordinates to a cell (y * width + x).
+	 */
+	private int distance(int x, int y, int cell) {
+		return Math.abs(cell % width - x) + Math.abs(cell / width - y);
+	}
+
+	/**
+	 *  Moves an agent (already lifted from the grid).
+	 */
+	private void applyMove(int slot, Move move) {
+		store.move(slot, move);
+		if (metrics != null) metrics.moves++;
+		if (statistics != null) statistics.distance[store.id[slot]]++;
+		
+		int x = store.x[slot],
+			y = store.y[slot];
+		
+		// Removes this agent if it goes out of bounds.
+		if (outOfBounds(x, y)) {
+			if (listener != null) listener.leftBounds(store.id[slot], x, y);
+			if (metrics != null) metrics.leftBounds++;
+			if (statistics != null) statistics.deaths[store.id[slot]] = Death.LEFT_BOUNDS;
+			
+			markForRemoval(slot);
+			return;
+		}
+		
+		if (listener != null) listener.moved(store.id[slot], x, y);
+		
+		// Fighting.
+		if (collidesAgent(x, y)) {
+			int other = grid.agentAt(x, y);
+			
+			// It has already moved this step, so it has already starved.
+			if (other < slot && store.food[other] <= store.upkeep[other]) {
+				starved(other);
+			} else {
+				if (listener != null) listener.killed(store.id[other], store.id[slot], x, y);
+				if (metrics != null) metrics.kills++;
+				if (statistics != null) statistics.killed(store.id[slot], store.id[other]);
+				
+				markForRemoval(other);
+			}
+		}
+		
+		grid.putAgent(slot, x, y);
+		
+		// Eating.
+		if (collidesFood(x, y)) {
+			feed(slot);
+		}
+	}
+	
+	/**
+	 *  Moves every agent at once. First, all agents choose their moves
+	 *  in parallel (by shards), looking at the same state (nothing changes during that).
+	 *  Then, the moves are applied: agents which went out of bounds are removed,
+	 *  and agents which ended up on the same cell fight (see wins()).
+	 *  The winners eat the food on their cells.
+	 *  
+	 *  The outcome of a cell does not depend on the order in which agents
+	 *  are processed, so neither does the outcome of the step.
+	 *  That's why the moves can be applied by every shard at the same time
+	 *  - each one only takes care of the cells in its rows (see Shard).
+	 *  
+	 *  This is phase one: choosing moves. (see applyMoves() for phase two)
+	 */
+	private void proposeMoves() {
+		// Every agent moves, so a replay has one for every slot.
+		if (replay != null) {
+			for (int slot = 0, size = store.size(); slot < size; slot++) {
+				proposals[slot] = replay.move(replayed + slot);
+			}
+		} else {
+			IntStream.range(0, shards.length).parallel().forEach(i -> chooseMoves(shards[i]));
+			
+			for (Shard shard : shards) {
+				randomStep |= shard.movedRandomly;
+			}
+		}
+	}
+		
+	/**
+	 *  Phase two of a simultaneous step: applying the proposed moves.
+	 */
+	private void applyMoves() {
+		if (sparse) {
+			// The sparse grid can't be changed from more threads.
+			sortMoves();
+		} else {
+			// Every shard moves its agents and hands over
+			// the ones which left its rows. Only then can the shards resolve their cells.
+			IntStream.range(0, shards.length).parallel().forEach(i -> leaveCells(i));
+			IntStream.range(0, shards.length).parallel().forEach(i -> resolveCells(shards[i]));
+		}
+		
+		int meals = 0;
+		for (Shard shard : shards) {
+			meals += shard.eaten.size();
+			
+			for (int n = 0, size = shard.eaten.size(); n < size; n++) {
+				int cell = shard.eaten.get(n);
+				
+				foodChanged(cell);
+				if (freeCells != null) {
+					freeCells.add(cell);
+				}
+			}
+		}
+		
+		food.taken(meals);
+		
+		if (listener != null) {
+			reportSimultaneousStep();
+		}
+		
+		if (metrics != null) {
+			countSimultaneousStep(meals);
+		}
 	}
-	
-	
+
 	/**
-	 *  Calculates the amount of food to place.
+	 *  Counts what happened in the phases of a simultaneous step for the metrics.
+	 *  Done afterwards, like reportSimultaneousStep(), so shards don't share counters.
 	 */
-	private int calculateFoodAmount(double foodPerAgent, int numAgents) {
-		return (int)Math.round(foodPerAgent * numAgents);
+	private void countSimultaneousStep(int meals) {
+		for (int slot = 0, size = store.size(); slot < size; slot++) {
+			if (outOfBounds(store.x[slot], store.y[slot])) {
+				metrics.leftBounds++;
+			} else if (isMarked(slot)) {
+				metrics.kills++;
+			}
+		}
+		
+		metrics.moves += store.size();
+		metrics.meals += meals;
 	}
-	
-	
+
 	/**
-	 * Method used to place agents on the simulation plane. 
-	 * 
-	 * @param genotypes Genotypes to be turned into agents.
+	 *  Tells the listener what happened in the phases of a simultaneous step.
+	 *  Done afterwards on this thread, so listeners don't need to be thread-safe.
+	 *  Every agent left the cell it started on, so the ones that are not on the grid
+	 *  (and did not leave the plane) lost a fight against the one that is.
 	 */
-	private void placeAgents(List<GAWrapper> genotypes) {
-		for (GAWrapper gtype : genotypes) {
-			Agent<GAWrapper> agent;
+	private void reportSimultaneousStep() {
+		for (int slot = 0, size = store.size(); slot < size; slot++) {
+			int x = store.x[slot],
+				y = store.y[slot];
 			
-			// Choose random coordinates and repeat if something exists on them already.
-			do {
-				int x = randomX();
-				int y = randomY();
-				
-				agent = makeAgent(gtype, x, y);
-			} while (collidesAgent(agent)); // D: pretty retarded, can run infinitely
+			if (outOfBounds(x, y)) {
+				listener.leftBounds(store.id[slot], x, y);
+				continue;
+			}
 			
-			agents.add(agent);
-			nextId++; // Looks ugly af.
+			listener.moved(store.id[slot], x, y);
+			if (isMarked(slot)) {
+				listener.killed(store.id[slot], store.id[grid.agentAt(x, y)], x, y);
+			}
 		}
 		
-		assert genotypes.size() == agents.size() : "The amount of given genotypes"
-				+ " and created agents is not equal. Missed some?";
+		for (Shard shard : shards) {
+			for (int n = 0, size = shard.eaten.size(); n < size; n++) {
+				int x = shard.eaten.get(n) % width,
+					y = shard.eaten.get(n) / width;
+				
+				listener.ate(store.id[grid.agentAt(x, y)], x, y);
+			}
+		}
 	}
 	
-	
 	/**
-	 *  Places food on the simulation plane. Two food samples cannot be placed
-	 *  on the same coordinates.
+	 *  Lets every agent of a shard choose its move. They all look at the shard's view,
+	 *  and their random numbers depend only on the seed, the step and their ids.
 	 */
-	private void placeFood(int amount) {
-		for (int i = 0; i < amount; i++) {
-			Food foodSample;
+	private void chooseMoves(Shard shard) {
+		IntList owned = shard.owned;
+		shard.movedRandomly = false;
+		
+		for (int n = 0, size = owned.size(); n < size; n++) {
+			int slot = owned.get(n);
+			long decisionSeed = agentSeed(slot);
 			
-			do {
-				int x = randomX(),
-					y = randomY();
-				
-				foodSample = new Food(x, y);
-			} while (collidesAgent(foodSample) || collidesFood(foodSample));
+			shard.random.reseed(decisionSeed);
+			proposals[slot] = store.genotype[slot].evaluate(store.view(slot), shard.state);
 			
-			food.add(foodSample);
+			if (shard.random.state() != decisionSeed) {
+				shard.movedRandomly = true;
+				
+				// Every agent has its own id, so shards never count into the same place.
+				if (statistics != null) statistics.randomMoves[store.id[slot]]++;
+			}
 		}
 	}
 	
 	/**
-	 * A simple, 'overridable' method for creating a single agent.
-	 * 
-	 * @param genotype Genotype of this agent.
-	 * @param x X position.
-	 * @param y Y position.
-	 * @return An agent with these coordinates.
-	 */
-	protected Agent<GAWrapper> makeAgent(GAWrapper genotype, int x, int y) {
-		// ASSIGNING IDS IS A BOTCHED AND RETARDED SOLUTION.
-		return new Agent<GAWrapper>(genotype, x, y, STARTING_ENERGY, nextId);
-	}
-	
-	/**
-	 *  Chooses a random valid x position.
-	 */
-	protected int randomX() {
-		return rand.nextInt(width);
-	}
-	
-	/**
-	 * Chooses a random valid y position.
+	 *  Lifts every agent of a shard from its cell and moves it.
+	 *  Agents which went out of bounds are removed, others are
+	 *  passed to the shard which owns their new row.
+	 *  (which can only be this shard or one of its neighbours)
 	 */
-	protected int randomY() {
-		return rand.nextInt(height);
+	private void leaveCells(int i) {
+		Shard shard = shards[i];
+		IntList owned = shard.owned;
+		
+		for (int n = 0, size = owned.size(); n < size; n++) {
+			int slot = owned.get(n);
+			
+			grid.removeAgent(slot, store.x[slot], store.y[slot]);
+			store.move(slot, proposals[slot]);
+			if (statistics != null) statistics.distance[store.id[slot]]++;
+			
+			int x = store.x[slot],
+				y = store.y[slot];
+			
+			if (outOfBounds(x, y)) {
+				if (statistics != null) statistics.deaths[store.id[slot]] = Death.LEFT_BOUNDS;
+				markForRemoval(slot);
+			} else if (y < shard.top) {
+				shards[i - 1].fromBelow.add(slot);
+			} else if (y >= shard.bottom) {
+				shards[i + 1].fromAbove.add(slot);
+			} else {
+				shard.stayed.add(slot);
+			}
+		}
 	}
 	
-	
 	/**
-	 *  Checks if this simulation ended (when all agents are removed).
-	 * 
-	 * @return True if ended, false otherwise.
+	 *  Puts the agents which moved onto a shard's rows back on the grid.
+	 *  Agents which ended up on the same cell fight (only the winner stays in the grid).
+	 *  Then, the winners eat.
 	 */
-	public boolean ended() {
-		return agents.isEmpty();
+	private void resolveCells(Shard shard) {
+		IntList[] incoming = { shard.fromAbove, shard.stayed, shard.fromBelow };
+		
+		for (IntList agents : incoming) {
+			for (int n = 0, size = agents.size(); n < size; n++) {
+				int slot = agents.get(n),
+					x = store.x[slot],
+					y = store.y[slot];
+				
+				// Fighting.
+				int other = grid.agentAt(x, y);
+				if (other == OccupancyGrid.EMPTY) {
+					grid.putAgent(slot, x, y);
+				} else if (wins(slot, other)) {
+					if (statistics != null) statistics.killed(store.id[slot], store.id[other]);
+					markForRemoval(other);
+					grid.putAgent(slot, x, y);
+				} else {
+					if (statistics != null) statistics.killed(store.id[other], store.id[slot]);
+					markForRemoval(slot);
+				}
+			}
+		}
+		
+		// Eating. Only one agent survived on every cell, so there's no contention.
+		// The food count is updated after every shard is done.
+		for (IntList agents : incoming) {
+			for (int n = 0, size = agents.size(); n < size; n++) {
+				int slot = agents.get(n),
+					x = store.x[slot],
+					y = store.y[slot];
+				
+				if (!isMarked(slot) && collidesFood(x, y)) {
+					if (statistics != null) statistics.meals[store.id[slot]]++;
+					store.food[slot] += FOOD_ENERGY;
+					food.take(x, y);
+					shard.eaten.add(y * width + x);
+				}
+			}
+		}
+
+		// Shards cover consecutive rows, so sorted lists are in the same order
+		// for any number of shards. (the order in which cells return to the pool
+		// decides where food grows)
+		if (freeCells != null) {
+			shard.eaten.sort();
+		}
 	}
 	
-	
 	/**
-	 *  Computes a single step of this simulation.
-	 *  
-	 *  A single step is composed of:
-	 *   - agent movement
-	 *   - taking care of out-of-bounds agents
-	 *   - fights (agents which lost are turned to food)
-	 *   - eating food (which includes dead agents turned to food)
-	 *   - removal of starved agents
-	 *   
+	 *  Applies the proposed moves on a sparse plane, on this thread. Instead of looking up
+	 *  cells one by one, the agents which stayed on the plane are radix sorted by their new cells.
+	 *  Agents on the same cell end up next to each other and fight - the best one wins,
+	 *  just like with shards (wins() is a total order, so the order of the fights does not matter).
+	 *  Then the winners, still sorted, are merged with the sorted food to find the meals.
+	 *  Costs O(agents + food) and ends the same way as applying the moves by shards.
 	 */
-	public void step() {
+	private void sortMoves() {
+		int moved = 0;
 		
-		for (Agent<GAWrapper> agent : agents) {
-			// Already removed, so leave it.
-			if (isMarked(agent)) {
-				continue;
-			}
+		for (int slot = 0, size = store.size(); slot < size; slot++) {
+			grid.removeAgent(slot, store.x[slot], store.y[slot]);
+			store.move(slot, proposals[slot]);
+			if (statistics != null) statistics.distance[store.id[slot]]++;
 			
-			agent.move(getSimulationState());
+			int x = store.x[slot],
+				y = store.y[slot];
 			
-			// Removes this agent if it goes out of bounds.
-			if (outOfBounds(agent)) {
-				markForRemoval(agent);
-				continue;
+			if (outOfBounds(x, y)) {
+				if (statistics != null) statistics.deaths[store.id[slot]] = Death.LEFT_BOUNDS;
+				markForRemoval(slot);
+			} else {
+				sortedCells[moved] = y * width + x;
+				sortedSlots[moved] = slot;
+				moved++;
 			}
+		}
+		
+		sorter.sort(sortedCells, sortedSlots, moved);
+		
+		// Fighting. Only the winner of every cell stays - in the first part of the arrays.
+		int winners = 0;
+		for (int n = 0; n < moved; ) {
+			int cell = sortedCells[n],
+				winner = sortedSlots[n],
+				end = n + 1;
 			
-			// Fighting.
-			if (collidesAgent(agent)) {
-				markForRemoval(collidingAgent(agent));
+			for (; end < moved && sortedCells[end] == cell; end++) {
+				if (wins(sortedSlots[end], winner)) {
+					winner = sortedSlots[end];
+				}
 			}
 			
-			// Eating.
-			if (collidesFood(agent)) {
-				feed(agent);
+			for (int k = n; k < end; k++) {
+				if (sortedSlots[k] != winner) {
+					if (statistics != null) statistics.killed(store.id[winner], store.id[sortedSlots[k]]);
+					markForRemoval(sortedSlots[k]);
+				}
 			}
 			
-			// Subtraction of energy.
-			subtractFood(agent);
+			grid.putAgent(winner, cell % width, cell / width);
+			sortedCells[winners] = cell;
+			sortedSlots[winners] = winner;
+			winners++;
 			
-			// Starvation.
-			if (agent.starved()) {
-				markForRemoval(agent);
+			n = end;
+		}
+		
+		// Eating. The eaten cells come out sorted, like the shards' lists.
+		// The food count is updated afterwards, as with shards.
+		IntList eaten = shards[0].eaten;
+		food.takeFrom(sortedCells, winners, eaten);
+		
+		for (int n = 0, e = 0; e < eaten.size(); n++) {
+			if (sortedCells[n] == eaten.get(e)) {
+				int slot = sortedSlots[n];
+				
+				if (statistics != null) statistics.meals[store.id[slot]]++;
+				store.food[slot] += FOOD_ENERGY;
+				e++;
 			}
 		}
-
-		removeMarked();
+	}
+	
+	/**
+	 *  Assigns every agent to the shard which owns its row.
+	 */
+	private void distributeAgents() {
+		for (Shard shard : shards) {
+			shard.owned.clear();
+			shard.clearIncoming();
+		}
 		
-		steps++;
+		for (int slot = 0, size = store.size(); slot < size; slot++) {
+			shards[shardOfRow[store.y[slot]]].owned.add(slot);
+		}
 	}
 	
 	/**
-	 *  Subtracting food of an agent.
+	 *  Checks if an agent wins a fight against the other one.
+	 *  The one with more energy wins. If both have the same amount,
+	 *  a coin toss (derived from the seed, the step and their ids) decides.
 	 */
-	private void subtractFood(Agent<GAWrapper> agent) {
-		int size = agent.getSize();
-		int penalty = 0;
+	private boolean wins(int slot, int other) {
+		if (store.food[slot] != store.food[other]) {
+			return store.food[slot] > store.food[other];
+		}
 		
-		// Penalty if an organism is too big.
-		if (size > SIZE_THRESHOLD) {
-			penalty = Math.round((size - SIZE_THRESHOLD) * PER_SIZE_PENALTY);
+		long toss = mix(seed ^ mix(steps) ^ mix(store.id[slot])),
+			 otherToss = mix(seed ^ mix(steps) ^ mix(store.id[other]));
+		
+		if (toss != otherToss) {
+			return toss > otherToss;
 		}
 		
-		agent.subtractFood(ENERGY_SUB_PER_STEP + penalty);
+		return store.id[slot] < store.id[other];
 	}
 	
+	/**
+	 *  Seed of the random numbers for an agent's decisions in this step.
+	 *  It only depends on the simulation's seed, the step and the agent's id.
+	 */
+	private long agentSeed(int slot) {
+		return seed ^ mix(steps) ^ mix(~(long)store.id[slot]);
+	}
 	
 	/**
-	 *  Feeding an agent.
+	 *  Scrambles the bits of a number. (the finalizer of SplitMix64)
 	 */
-	private void feed(Agent<GAWrapper> agent) {
-		agent.feed(FOOD_ENERGY);
-		food.remove(collidingFood(agent));
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
 	}
 	
+	/**
+	 *  Subtracting food of every agent. Agents which are
+	 *  already dead lose it too, but it does not matter.
+	 *  Agents left without food are remembered for starve().
+	 */
+	private void subtractFood() {
+		starving.clear();
+		ENERGY.burn(store.food, store.upkeep, store.size(), starving);
+	}
 	
 	/**
-	 *  Mark an entity to be removed.
+	 *  Marks every agent that has starved.
 	 */
-	private void markForRemoval(Agent<GAWrapper> agent) {
-		marked.add(agent);
+	private void starve() {
+		for (int n = 0, size = starving.size(); n < size; n++) {
+			int slot = starving.get(n);
+		
+			if (store.alive[slot]) {
+				starved(slot);
+			}
+		}
+	}
+
+	/**
+	 *  Reports an agent as starved and marks it.
+	 */
+	private void starved(int slot) {
+		if (listener != null) listener.starved(store.id[slot], store.x[slot], store.y[slot]);
+		if (metrics != null) metrics.starvations++;
+		if (statistics != null) statistics.deaths[store.id[slot]] = Death.STARVED;
+
+		markForRemoval(slot);
 	}
 	
 	
 	/**
-	 *  Check if an entity is marked for removal.
+	 *  Feeding an agent.
 	 */
-	private boolean isMarked(Entity listEntity) {
-		return marked.contains(listEntity);
+	private void feed(int slot) {
+		int x = store.x[slot],
+			y = store.y[slot];
+		
+		store.food[slot] += FOOD_ENERGY;
+		food.consume(x, y);
+		
+		if (listener != null) listener.ate(store.id[slot], x, y);
+		if (metrics != null) metrics.meals++;
+		if (statistics != null) statistics.meals[store.id[slot]]++;
+		
+		foodChanged(y * width + x);
+		if (freeCells != null) {
+			freeCells.add(y * width + x);
+		}
 	}
 	
 	
 	/**
-	 *  Removed all entities marked for removal.
+	 *  Grows back food on random cells without food, foodRegrowth samples per step.
+	 *  Each sample costs O(1), no matter how many entities there are.
+	 *  Food can grow under an agent - it's eaten by the next agent that steps on it.
+	 *  Food that does not fit on the plane is lost.
 	 */
-	@SuppressWarnings("unchecked")
-	private void removeMarked() {
-		// Removes all agents form main agent list 
-		// and saves their scores.
-		for (Entity agent : marked) {
-			agents.remove(agent);
-			addScore((Agent<GAWrapper>) agent);
+	private void growFood() {
+		foodToGrow += foodRegrowth;
+		
+		for (; foodToGrow >= 1 && food.count() < width * height; foodToGrow--) {
+			int cell = freeCells != null ? freeCells.removeRandom(growthRandom) : randomFreeCell();
+			food.place(cell % width, cell / width);
+			foodChanged(cell);
 		}
 		
-		// Clears this set.
-		marked.clear();
+		foodToGrow -= Math.floor(foodToGrow);
 	}
 	
-	
 	/**
-	 *  Saves an agent and its score to be returned as part
-	 *  of this simulation's results.
+	 *  Picks a random cell without food, by trying random cells until one is free.
+	 *  Used on sparse planes, which have no pool of free cells. They're mostly empty,
+	 *  so it hardly ever takes more than one try.
 	 */
-	private void addScore(Agent<GAWrapper> agent) {
-		results.appendGenotype(agent.getId(), steps);
+	private int randomFreeCell() {
+		int cell;
+		do {
+			cell = growthRandom.nextInt(width * height);
+		} while (food.has(cell % width, cell / width));
+		
+		return cell;
 	}
 	
 	
 	/**
-	 *  Checks if this entity is out of bounds.
-	 *  
-	 *  @return True if it's out of bounds.
+	 *  Mark an agent to be removed. It's also removed from the grid,
+	 *  because marked agents should not collide with anything.
 	 */
-	private boolean outOfBounds(Entity e) {
-		int x = e.getX(),
-			y = e.getY();
-		
-		return !(x >= 0 && x < width && y >= 0 && y < height);
+	private void markForRemoval(int slot) {
+		store.alive[slot] = false;
+		grid.removeAgent(slot, store.x[slot], store.y[slot]);
 	}
 	
 	
 	/**
-	 *  Checks if an entity lay on the same space as some agent.
+	 *  Check if an agent is marked for removal.
 	 */
-	private boolean collidesAgent(Entity e) {
-		return collides(e, agents) != null;
+	private boolean isMarked(int slot) {
+		return !store.alive[slot];
 	}
 	
 	
 	/**
-	 *  Checks if this agent collides with an entity and 
-	 *  returns that entity.
+	 *  Removes all agents marked for removal and saves their scores.
+	 *  It's a single pass that moves the survivors to lower slots
+	 *  (keeping their order), so the grid has to follow.
 	 */
-	private Agent<GAWrapper> collidingAgent(Entity e) {
-		@SuppressWarnings("unchecked") // We know what type it is.
-		Agent<GAWrapper> agent = (Agent<GAWrapper>) collides(e, agents);
+	private void removeDead() {
+		int kept = 0;
+		
+		for (int slot = 0, size = store.size(); slot < size; slot++) {
+			if (isMarked(slot)) {
+				addScore(slot);
+				continue;
+			}
+			
+			if (slot != kept) {
+				grid.moveSlot(store.x[slot], store.y[slot], slot, kept);
+				store.moveSlot(slot, kept);
+			}
+			
+			kept++;
+		}
 		
-		assert agent != null : "No colliding agents found (returned null), but this is not a valid return value.";
-		return agent;
+		store.truncate(kept);
 	}
 	
+	
 	/**
-	 *  Returns a food sample that collides with that entity.
+	 *  Saves an agent and its score to be returned as part
+	 *  of this simulation's results.
 	 */
-	private Food collidingFood(Entity e) {
-		Food fd = (Food) collides(e, food);
-		
-		assert fd != null : "No colliding agents found (returned null), but this is not a valid return value.";
-		return fd;
+	private void addScore(int slot) {
+		results.appendGenotype(store.id[slot], steps);
 	}
 	
 	
 	/**
-	 *  Checks if an entity lay on the same space as a food sample.
+	 *  Checks if these coordinates are out of bounds.
+	 * 
+	 *  @return True if they're out of bounds.
 	 */
-	private boolean collidesFood(Entity e) {
-		return collides(e, food) != null;
+	private boolean outOfBounds(int x, int y) {
+		return !grid.inBounds(x, y);
 	}
 	
+	
 	/**
-	 *  Checks if this entity collides an entity in a given list and returns it.
-	 *  If this entity is in this list, it does not count as collision.
+	 *  Checks if there is an agent on these coordinates.
+	 *  Marked agents are not in the grid, so they do not count.
 	 */
-	private Entity collides(Entity e, List<? extends Entity> entities) {
-		for (Entity listEntity : entities) {
-			if (listEntity.hasSameCoordinates(e) && !listEntity.equals(e)) {
-				// Should not count entities that are marked for removal.
-				// This method should not care about that and it looks stupid
-				// but I'm too retarded to think of something else :(
-				if (!isMarked(listEntity)) {
-					return listEntity;
-				}
-			}
-		}
-		
-		return null;
+	private boolean collidesAgent(int x, int y) {
+		return grid.agentAt(x, y) != OccupancyGrid.EMPTY;
+	}
+	
+	/**
+	 *  Checks if there is a food sample on these coordinates.
+	 */
+	private boolean collidesFood(int x, int y) {
+		return food.has(x, y);
 	}
 	
 	
@@ -372,13 +1535,14 @@ public class Simulation {
 	
 	
 	/**
-	 * Returns the simulation state of this simulation.
+	 * Returns the simulation state of this simulation. It's the same object
+	 * for the whole simulation and always shows the current state.
 	 * Changing state through this object is <b>undefined behavior</b>.
 	 * 
 	 * @return SimulationState of this simulation.
 	 */
 	public SimulationState getSimulationState() {
-		return new SimulationState(agents, food);
+		return state;
 	}
 	
 	
@@ -395,6 +1559,17 @@ public class Simulation {
 	}
 	
 	
+	/**
+	 * Returns the counters and phase times of this simulation, if its factory
+	 * turned them on.
+	 * 
+	 * @return Metrics or null if they're off.
+	 */
+	public SimulationMetrics getMetrics() {
+		return metrics;
+	}
+	
+	
 	/**
 	 * Returns this simulation's plane width.
 	 * 
@@ -414,6 +1589,15 @@ public class Simulation {
 		return height;
 	}
 	
+	/**
+	 * Returns how agents move during a step in this simulation.
+	 * 
+	 * @return Step mode of this simulation.
+	 */
+	public StepMode getStepMode() {
+		return mode;
+	}
+	
 	/**
 	 * Returns the number of steps this simulation had.
 	 * 
@@ -422,4 +1606,288 @@ public class Simulation {
 	public int getSteps() {
 		return steps;
 	}
+	
+	/**
+	 * Writes this simulation's whole state to a compact binary checkpoint:
+	 * its parameters, counters, random number streams, scores, metrics and agent statistics
+	 * (if it collects them), agents (by the ids of their genotypes), food (as a bitset or,
+	 * on sparse planes, as sorted cells) and the free cells.
+	 * Genotypes themselves are not written - the population is needed to restore it.
+	 * Listeners are not saved either.
+	 * 
+	 * A restored simulation continues exactly like this one would.
+	 * Only macro-steps under way are not saved (they're just a cache), so those agents
+	 * decide again after a restore and fewer moves may be counted as skipped in the metrics.
+	 * It should be called between steps.
+	 * 
+	 * @param out Where to write.
+	 * @throws IOException If it cannot be written.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(CHECKPOINT_MAGIC);
+		out.writeInt(CHECKPOINT_VERSION);
+		
+		// Parameters.
+		out.writeInt(width);
+		out.writeInt(height);
+		out.writeDouble(foodPerAgent);
+		out.writeByte(mode.ordinal());
+		out.writeInt(shards == null ? 1 : shards.length);
+		out.writeDouble(foodRegrowth);
+		out.writeInt(maxSteps);
+		out.writeBoolean(detectCycles);
+		out.writeBoolean(sparse);
+		out.writeInt(macroSteps);
+		out.writeBoolean(metrics != null);
+		out.writeBoolean(collectsStatistics);
+		
+		// Population, so a different one can be caught.
+		List<GAWrapper> genotypes = results.genotypes();
+		out.writeInt(genotypes.size());
+		out.writeLong(fingerprint(genotypes));
+		
+		// Counters and random numbers.
+		out.writeLong(rand.state());
+		out.writeLong(growthRandom.state());
+		out.writeLong(seed);
+		out.writeInt(steps);
+		out.writeInt(nextId);
+		out.writeDouble(foodToGrow);
+		out.writeLong(foodHash);
+		out.writeLong(savedHash);
+		out.writeInt(sinceSaved);
+		out.writeInt(cycleWindow);
+		
+		// Scores of the agents which already died.
+		for (int score : results.fitness()) {
+			out.writeInt(score);
+		}
+		
+		if (metrics != null) {
+			metrics.writeTo(out);
+		}
+		
+		if (statistics != null) {
+			statistics.writeTo(out);
+		}
+		
+		// Agents, in slot order.
+		out.writeInt(store.size());
+		for (int slot = 0, size = store.size(); slot < size; slot++) {
+			out.writeInt(store.id[slot]);
+			out.writeInt(store.x[slot]);
+			out.writeInt(store.y[slot]);
+			out.writeInt(store.food[slot]);
+			out.writeInt(store.upkeep[slot]);
+		}
+		
+		food.writeTo(out);
+		
+		if (freeCells != null) {
+			freeCells.writeTo(out);
+		}
+	}
+	
+	/**
+	 * Restores a simulation from a checkpoint written by writeTo().
+	 * 
+	 * @param in Where to read from.
+	 * @param genotypes The population of the saved simulation.
+	 *                  (null only for replays, which never ask the genotypes for moves)
+	 * @return The restored simulation.
+	 * @throws IOException If it cannot be read, is not a valid checkpoint
+	 *                     or was written for a different population.
+	 */
+	public static Simulation readFrom(DataInput in, List<GAWrapper> genotypes) throws IOException {
+		if (in.readInt() != CHECKPOINT_MAGIC) {
+			throw new IOException("Not a simulation checkpoint.");
+		}
+		
+		int version = in.readInt();
+		if (version != CHECKPOINT_VERSION) {
+			throw new IOException("Unsupported checkpoint version: " + version + ".");
+		}
+		
+		int width = in.readInt(),
+			height = in.readInt();
+		double foodPerAgent = in.readDouble();
+		int mode = in.readByte(),
+			shards = in.readInt();
+		
+		if (width < 1 || height < 1 || !(foodPerAgent >= 0) || mode < 0 || mode >= StepMode.values().length || shards < 1) {
+			throw new IOException("Invalid simulation parameters.");
+		}
+		
+		SimulationFactory parameters = new SimulationFactory(width, height, foodPerAgent);
+		parameters.setStepMode(StepMode.values()[mode]);
+		parameters.setShards(shards);
+		
+		try {
+			parameters.setFoodRegrowth(in.readDouble());
+			parameters.setMaxSteps(in.readInt());
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e.getMessage());
+		}
+		
+		parameters.setCycleDetection(in.readBoolean());
+		parameters.setCollisionBackend(in.readBoolean() ? CollisionBackend.SPARSE : CollisionBackend.DENSE);
+		
+		try {
+			parameters.setMacroSteps(in.readInt());
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e.getMessage());
+		}
+		
+		parameters.setMetrics(in.readBoolean());
+		parameters.setAgentStatistics(in.readBoolean());
+		
+		int population = in.readInt();
+		long fingerprint = in.readLong();
+		
+		if (genotypes == null) {
+			// Replays don't need the genotypes. (see Replay)
+			genotypes = Collections.nCopies(population, null);
+		} else if (population != genotypes.size() || fingerprint != fingerprint(genotypes)) {
+			throw new IOException("The checkpoint was written for a different population.");
+		}
+		
+		Simulation sim = new Simulation(parameters, genotypes, in.readLong());
+		sim.growthRandom.reseed(in.readLong());
+		sim.readState(in);
+		sim.startEvent();
+		
+		return sim;
+	}
+	
+	/**
+	 *  Reads the rest of a checkpoint (after the random stream) into this empty simulation.
+	 */
+	private void readState(DataInput in) throws IOException {
+		seed = in.readLong();
+		steps = in.readInt();
+		nextId = in.readInt();
+		foodToGrow = in.readDouble();
+		foodHash = in.readLong();
+		savedHash = in.readLong();
+		sinceSaved = in.readInt();
+		cycleWindow = in.readInt();
+		
+		List<GAWrapper> genotypes = results.genotypes();
+		for (int id = 0; id < genotypes.size(); id++) {
+			results.appendGenotype(id, in.readInt());
+		}
+		
+		if (metrics != null) {
+			metrics.readFrom(in);
+		}
+		
+		if (statistics != null) {
+			statistics.readFrom(in);
+		}
+		
+		int agents = in.readInt();
+		if (agents < 0 || agents > genotypes.size()) {
+			throw new IOException("Invalid number of agents: " + agents + ".");
+		}
+		
+		for (int i = 0; i < agents; i++) {
+			int id = in.readInt(),
+				x = in.readInt(),
+				y = in.readInt(),
+				energy = in.readInt(),
+				upkeep = in.readInt();
+			
+			if (id < 0 || id >= genotypes.size() || outOfBounds(x, y) || collidesAgent(x, y) || energy < 0) {
+				throw new IOException("Invalid agent in the checkpoint.");
+			}
+			
+			int slot = store.add(genotypes.get(id), x, y, energy, id);
+			store.upkeep[slot] = upkeep;
+			grid.putAgent(slot, x, y);
+		}
+		
+		food.readFrom(in);
+		
+		if (freeCells != null) {
+			freeCells.readFrom(in);
+		}
+		
+		if (mode == StepMode.SIMULTANEOUS) {
+			distributeAgents();
+		}
+	}
+	
+	/**
+	 *  Hash of a population's genotypes, so a checkpoint is not restored with a different one.
+	 */
+	private static long fingerprint(List<GAWrapper> genotypes) {
+		long hash = genotypes.size();
+		
+		for (GAWrapper gtype : genotypes) {
+			hash = 31 * hash + gtype.asString().hashCode();
+		}
+		
+		return hash;
+	}
+	
+	/**
+	 *  Does a step with moves from a recording instead of the genotypes.
+	 *  
+	 *  @param recording Recording of this simulation.
+	 *  @param step Index of the recorded step.
+	 */
+	void replayStep(Recording recording, int step) {
+		replay = recording;
+		replayed = recording.firstMove(step);
+		
+		// Nothing is decided, so the recording tells if it was random. (see repeats())
+		randomStep = recording.wasRandom(step);
+		
+		step();
+		replay = null;
+	}
+	
+	/**
+	 *  Checks if an agent moved randomly in this step. (so far)
+	 */
+	boolean movedRandomly() {
+		return randomStep;
+	}
+	
+	/**
+	 *  Returns the number of genotypes this simulation was created with.
+	 */
+	int populationSize() {
+		return results.genotypes().size();
+	}
+	
+	/**
+	 * Registers a listener, which is told about every event from now on.
+	 * Listeners are called in the order they were added.
+	 * Without any listeners, a simulation does not report events at all.
+	 * 
+	 * @param l Listener to add.
+	 */
+	public void addListener(SimulationListener l) {
+		if (listener == null) {
+			listener = l;
+		} else if (listener instanceof ListenerList) {
+			listener = ((ListenerList)listener).with(l);
+		} else {
+			listener = new ListenerList(listener, l);
+		}
+	}
+	
+	/**
+	 * Removes a listener added with addListener(). Does nothing if it was not added.
+	 * 
+	 * @param l Listener to remove.
+	 */
+	public void removeListener(SimulationListener l) {
+		if (listener == l) {
+			listener = null;
+		} else if (listener instanceof ListenerList) {
+			listener = ((ListenerList)listener).without(l);
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,42 @@
+package mlsim.simulation;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event of a single simulation - from its start (or restore)
+ * until its last agent is gone. Without a recording, it costs almost nothing.
+ *
+ * @author bingis_khan
+ *
+ */
+@Name("mlsim.Simulation")
+@Label("Simulation")
+@Category({ "mlsim", "Simulation" })
+@Description("A simulation from its start until it ended.")
+class SimulationEvent extends Event {
+	
+	@Label("Width")
+	int width;
+	
+	@Label("Height")
+	int height;
+	
+	@Label("Agents")
+	@Description("Number of agents at the start.")
+	int agents;
+	
+	@Label("Food")
+	@Description("Number of food samples at the start.")
+	int food;
+	
+	@Label("Step Mode")
+	String mode;
+	
+	@Label("Steps")
+	@Description("Number of steps until the simulation ended.")
+	int steps;
+}
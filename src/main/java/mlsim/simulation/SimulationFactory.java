@@ -1,6 +1,9 @@
 package mlsim.simulation;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.SplittableRandom;
 
 import mlsim.wrapper.GAWrapper;
 
@@ -14,6 +17,27 @@ import mlsim.wrapper.GAWrapper;
 public class SimulationFactory {
 	private final int width, height;
 	private final double foodPerAgent;
+	
+	// Optional parameters.
+	private StepMode stepMode = StepMode.SEQUENTIAL;
+	private int shards = Runtime.getRuntime().availableProcessors();
+	private double foodRegrowth = 0;
+	private int maxSteps = 0;
+	private boolean cycleDetection = false;
+	private boolean metrics = false;
+	private boolean agentStatistics = false;
+	private int macroSteps = 0;
+	private CollisionBackend collisionBackend = CollisionBackend.AUTO;
+	
+	// AUTO picks the sparse backend for planes with at least this many cells,
+	// which have at least this many cells for every agent and food sample.
+	// (about where the sparse one gets faster - its lookups are slower, but it doesn't
+	// have to set up the whole plane for every simulation)
+	private static final long SPARSE_MIN_CELLS = 1 << 20,
+							  SPARSE_CELLS_PER_ENTITY = 256;
+	
+	// Pre-generated starts of simulations. (empty unless setLayouts() was called)
+	private List<Layout> layouts = Collections.emptyList();
 
 	public SimulationFactory(int width, int height, double foodPerAgent) {
 		this.width = width;
@@ -33,14 +57,245 @@ public class SimulationFactory {
 		return foodPerAgent;
 	}
 	
+	public StepMode getStepMode() {
+		return stepMode;
+	}
+	
 	/**
-	 * Creates a new simulation with the parameters in this SimulationFactory.
+	 * Sets how agents move in new simulations. Sequential by default.
+	 * 
+	 * @param mode Step mode of new simulations.
+	 */
+	public void setStepMode(StepMode mode) {
+		stepMode = mode;
+	}
+	
+	public int getShards() {
+		return shards;
+	}
+	
+	/**
+	 * Sets into how many horizontal strips the plane of new simulations is cut.
+	 * Strips are processed in parallel, but only in simultaneous mode.
+	 * The number of shards does not change the outcome of a simulation.
+	 * By default, one per processor.
+	 * 
+	 * @param shards Number of shards. (at least 1)
+	 */
+	public void setShards(int shards) {
+		if (shards < 1) {
+			throw new IllegalArgumentException("A simulation needs at least one shard, got " + shards + ".");
+		}
+		
+		this.shards = shards;
+	}
+	
+	public double getFoodRegrowth() {
+		return foodRegrowth;
+	}
+	
+	/**
+	 * Sets how many food samples grow back on random cells every step.
+	 * Fractions add up over steps, so 0.5 means one sample every two steps.
+	 * By default 0 - food is only placed when a simulation is created.
+	 * 
+	 * @param samplesPerStep Food samples per step. (not negative)
+	 */
+	public void setFoodRegrowth(double samplesPerStep) {
+		if (!(samplesPerStep >= 0)) {
+			throw new IllegalArgumentException("Food regrowth cannot be negative, got " + samplesPerStep + ".");
+		}
+		
+		foodRegrowth = samplesPerStep;
+	}
+	
+	public int getMaxSteps() {
+		return maxSteps;
+	}
+
+	/**
+	 * Sets after how many steps new simulations are stopped.
+	 * Agents still alive then get the best score - as if they died in the next step.
+	 * By default 0 - no limit.
+	 * 
+	 * @param maxSteps Maximum number of steps. (0 for no limit)
+	 */
+	public void setMaxSteps(int maxSteps) {
+		if (maxSteps < 0) {
+			throw new IllegalArgumentException("Step limit cannot be negative, got " + maxSteps + ".");
+		}
+		
+		this.maxSteps = maxSteps;
+	}
+
+	public boolean detectsCycles() {
+		return cycleDetection;
+	}
+
+	/**
+	 * Sets if new simulations stop when their world (agents' positions and food)
+	 * comes back to an earlier state - agents that keep walking in circles and won't
+	 * eat anymore, for example. Agents alive then are scored by when they would starve.
+	 * Only cycles without random moves count, and simulations where food grows back
+	 * never stop this way. Costs a hash of every agent per step. Off by default.
+	 * 
+	 * @param on True to detect cycles.
+	 */
+	public void setCycleDetection(boolean on) {
+		cycleDetection = on;
+	}
+	
+	public boolean collectsMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Sets if new simulations count their events and time the phases of their steps.
+	 * (see SimulationMetrics) Off by default - then it costs nothing but a few null checks.
+	 * 
+	 * @param on True to collect metrics.
+	 */
+	public void setMetrics(boolean on) {
+		metrics = on;
+	}
+	
+	public boolean collectsAgentStatistics() {
+		return agentStatistics;
+	}
+	
+	/**
+	 * Sets if new simulations record what each of their agents did - meals, kills,
+	 * distance, random moves and cause of death. (see AgentStatistics) They come
+	 * with the results. Off by default - then it costs nothing but a few null checks.
+	 * 
+	 * @param on True to collect them.
+	 */
+	public void setAgentStatistics(boolean on) {
+		agentStatistics = on;
+	}
+	
+	public int getMacroSteps() {
+		return macroSteps;
+	}
+	
+	/**
+	 * Sets how many turns in a row agents of new simulations can keep making the same move
+	 * without deciding, while they're far from everything that could change it. (macro-steps)
+	 * Saves most of the decisions on large, sparse planes, and a simulation still
+	 * ends the same way. Only in sequential mode. By default 0 - off.
+	 * 
+	 * @param maxTurns Longest macro-step. (0 for none)
+	 */
+	public void setMacroSteps(int maxTurns) {
+		if (maxTurns < 0) {
+			throw new IllegalArgumentException("Macro-steps cannot be negative, got " + maxTurns + ".");
+		}
+		
+		macroSteps = maxTurns;
+	}
+	
+	public CollisionBackend getCollisionBackend() {
+		return collisionBackend;
+	}
+	
+	/**
+	 * Sets how new simulations index the agents and food on their planes. (see CollisionBackend)
+	 * By default AUTO - the sparse backend for large planes which are mostly empty,
+	 * where a plane-sized index would take far more memory than the agents and food.
+	 * 
+	 * @param backend Collision backend of new simulations.
+	 */
+	public void setCollisionBackend(CollisionBackend backend) {
+		collisionBackend = backend;
+	}
+	
+	/**
+	 * Checks if new simulations with this many agents use the sparse backend.
+	 * 
+	 * @param agents Number of agents.
+	 * @return True if they do.
+	 */
+	public boolean isSparse(int agents) {
+		switch (collisionBackend) {
+			case DENSE:  return false;
+			case SPARSE: return true;
+			default:     break;
+		}
+		
+		long cells = (long)width * height,
+			 entities = agents + Simulation.calculateFoodAmount(foodPerAgent, agents);
+		
+		return cells >= SPARSE_MIN_CELLS && cells >= SPARSE_CELLS_PER_ENTITY * entities;
+	}
+	
+	public List<Layout> getLayouts() {
+		return layouts;
+	}
+	
+	/**
+	 * Pre-generates layouts - starts of simulations with this many agents (see Layout).
+	 * Simulations made from the same layout with the same genotypes end the same way,
+	 * so when every generation is evaluated on the same layouts, the differences between
+	 * genotypes' fitness come from the genotypes and not from their luck. (common random numbers)
+	 * Far fewer simulations are needed to rank them, but they're all ranked on these worlds only.
+	 * 
+	 * The layouts only depend on the size of the plane, food per agent and the number of agents.
+	 * 
+	 * @param count Number of layouts. (0 to drop them)
+	 * @param agents Number of agents in every layout.
+	 * @param random Random number stream. (a number is taken for every layout)
+	 */
+	public void setLayouts(int count, int agents, SplittableRandom random) {
+		if (count < 0) {
+			throw new IllegalArgumentException("Number of layouts cannot be negative, got " + count + ".");
+		}
+		
+		List<Layout> generated = new ArrayList<>(count);
+		
+		// Every layout is picked with the same map. (see Layout.generate())
+		CellMap swapped = new CellMap(16);
+		for (int i = 0; i < count; i++) {
+			generated.add(Layout.generate(this, agents, random, swapped));
+		}
+		
+		layouts = Collections.unmodifiableList(generated);
+	}
+	
+	/**
+	 * Creates a new simulation with the parameters in this SimulationFactory
+	 * and an unseeded random number stream.
 	 * 
 	 * @param solutions Solutions to insert to the simulation.
 	 * @return A newly initialized simulation.
 	 */
 	public Simulation newSimulation(List<GAWrapper> solutions) {
-		return new Simulation(width, height, foodPerAgent, solutions);
+		return newSimulation(solutions, new SplittableRandom());
+	}
+	
+	/**
+	 * Creates a new simulation with the parameters in this SimulationFactory.
+	 * The simulation draws all of its random numbers from the given stream,
+	 * so simulations with streams split from the same seed are reproducible.
+	 * The stream must not be used by anything else.
+	 * 
+	 * @param solutions Solutions to insert to the simulation.
+	 * @param random Random number stream of the simulation.
+	 * @return A newly initialized simulation.
+	 */
+	public Simulation newSimulation(List<GAWrapper> solutions, SplittableRandom random) {
+		return new Simulation(this, solutions, random);
+	}
+
+	/**
+	 * Creates a new simulation with the parameters in this SimulationFactory,
+	 * which starts from a layout. (see setLayouts())
+	 * 
+	 * @param solutions Solutions to insert to the simulation.
+	 * @param layout Start of the simulation. It has to fit these parameters and solutions.
+	 * @return A newly initialized simulation.
+	 */
+	public Simulation newSimulation(List<GAWrapper> solutions, Layout layout) {
+		return new Simulation(this, solutions, layout);
 	}
 
 }
@@ -0,0 +1,73 @@
+package mlsim.simulation;
+
+/**
+ * A SimulationListener is told about everything that happens in a simulation,
+ * as it happens. (see Simulation.addListener())
+ * It lets recorders, metrics or the GUI follow a simulation without
+ * scanning the whole world every step.
+ * 
+ * Agents are given by their ids (indexes of their genotypes in the results).
+ * Every method does nothing by default, so only the needed ones have to be overridden.
+ * 
+ * In a simultaneous step, the events are reported after every agent has moved
+ * - first the moves (along with deaths) in the agents' order, then the meals.
+ * Listeners are always called from the thread that steps the simulation.
+ * 
+ * @author bingis_khan
+ *
+ */
+public interface SimulationListener {
+	
+	/**
+	 * An agent moved onto these coordinates.
+	 * 
+	 * @param agent Id of the agent.
+	 * @param x New X coordinate.
+	 * @param y New Y coordinate.
+	 */
+	default void moved(int agent, int x, int y) {}
+	
+	/**
+	 * An agent ate the food sample on these coordinates.
+	 * 
+	 * @param agent Id of the agent.
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 */
+	default void ate(int agent, int x, int y) {}
+	
+	/**
+	 * An agent was killed in a fight on these coordinates.
+	 * 
+	 * @param agent Id of the agent that died.
+	 * @param killer Id of the agent that stayed on the cell.
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 */
+	default void killed(int agent, int killer, int x, int y) {}
+	
+	/**
+	 * An agent ran out of energy on these coordinates.
+	 * 
+	 * @param agent Id of the agent.
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 */
+	default void starved(int agent, int x, int y) {}
+	
+	/**
+	 * An agent walked off the plane. The coordinates are out of bounds.
+	 * 
+	 * @param agent Id of the agent.
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 */
+	default void leftBounds(int agent, int x, int y) {}
+	
+	/**
+	 * A step has ended. (dead agents are removed and food has grown back)
+	 * 
+	 * @param simulation The simulation.
+	 */
+	default void stepped(Simulation simulation) {}
+}
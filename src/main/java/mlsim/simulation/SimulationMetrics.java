@@ -0,0 +1,203 @@
+package mlsim.simulation;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * SimulationMetrics counts what happened in a simulation (moves, kills, meals, ...)
+ * and how much time its steps spent in every phase. (see Phase)
+ *
+ * Simulations only collect them when it's turned on in their factory - otherwise
+ * they don't have any metrics and skip all of it. Metrics of more simulations
+ * can be added up (see add()), which can be done from different threads.
+ *
+ * @author bingis_khan
+ *
+ */
+public class SimulationMetrics {
+	
+	/**
+	 * Parts of a step that are timed separately.
+	 */
+	public enum Phase {
+		DECIDE("deciding (sensing, controllers)"),
+		MOVE("moving (collisions, feeding)"),
+		ENERGY("energy, starvation"),
+		REMOVAL("removal of the dead"),
+		GROWTH("food regrowth");
+		
+		private final String description;
+		
+		Phase(String description) {
+			this.description = description;
+		}
+		
+		@Override
+		public String toString() {
+			return description;
+		}
+	}
+	
+	private static final Phase[] PHASES = Phase.values();
+	
+	private final long[] nanos = new long[PHASES.length];
+	
+	// Package-private, so the simulation can count directly.
+	long steps, moves, kills, meals, starvations, leftBounds, skipped;
+	
+	/**
+	 *  Adds time spent in a phase.
+	 */
+	void time(Phase phase, long nanoseconds) {
+		nanos[phase.ordinal()] += nanoseconds;
+	}
+	
+	/**
+	 *  Sets everything back to 0.
+	 */
+	synchronized void clear() {
+		for (int i = 0; i < nanos.length; i++) {
+			nanos[i] = 0;
+		}
+		
+		steps = moves = kills = meals = starvations = leftBounds = skipped = 0;
+	}
+	
+	/**
+	 * Adds the metrics of another simulation to these.
+	 * The other simulation must not be running.
+	 * 
+	 * @param other Metrics to add.
+	 */
+	public synchronized void add(SimulationMetrics other) {
+		for (int i = 0; i < nanos.length; i++) {
+			nanos[i] += other.nanos[i];
+		}
+		
+		steps += other.steps;
+		moves += other.moves;
+		kills += other.kills;
+		meals += other.meals;
+		starvations += other.starvations;
+		leftBounds += other.leftBounds;
+		skipped += other.skipped;
+	}
+	
+	/**
+	 * Writes every counter and time. (see readFrom())
+	 * 
+	 * @param out Where to write.
+	 * @throws IOException If it cannot be written.
+	 */
+	synchronized void writeTo(DataOutput out) throws IOException {
+		for (long time : nanos) {
+			out.writeLong(time);
+		}
+		
+		out.writeLong(steps);
+		out.writeLong(moves);
+		out.writeLong(kills);
+		out.writeLong(meals);
+		out.writeLong(starvations);
+		out.writeLong(leftBounds);
+		out.writeLong(skipped);
+	}
+	
+	/**
+	 * Replaces every counter and time with the ones written by writeTo().
+	 * 
+	 * @param in Where to read from.
+	 * @throws IOException If it cannot be read.
+	 */
+	synchronized void readFrom(DataInput in) throws IOException {
+		for (int i = 0; i < nanos.length; i++) {
+			nanos[i] = in.readLong();
+		}
+		
+		steps = in.readLong();
+		moves = in.readLong();
+		kills = in.readLong();
+		meals = in.readLong();
+		starvations = in.readLong();
+		leftBounds = in.readLong();
+		skipped = in.readLong();
+	}
+	
+	/**
+	 * Returns the time spent in a phase.
+	 * 
+	 * @param phase Phase of a step.
+	 * @return Time in nanoseconds.
+	 */
+	public synchronized long nanos(Phase phase) {
+		return nanos[phase.ordinal()];
+	}
+	
+	public synchronized long steps() {
+		return steps;
+	}
+	
+	public synchronized long moves() {
+		return moves;
+	}
+	
+	/**
+	 * Returns the number of agents that died in a fight.
+	 * 
+	 * @return Number of kills.
+	 */
+	public synchronized long kills() {
+		return kills;
+	}
+	
+	public synchronized long meals() {
+		return meals;
+	}
+	
+	public synchronized long starvations() {
+		return starvations;
+	}
+	
+	/**
+	 * Returns the number of agents that died by going out of bounds.
+	 * 
+	 * @return Number of agents.
+	 */
+	public synchronized long leftBounds() {
+		return leftBounds;
+	}
+	
+	/**
+	 * Returns the number of moves made in macro-steps - without asking the genotype.
+	 * 
+	 * @return Number of moves.
+	 */
+	public synchronized long skipped() {
+		return skipped;
+	}
+	
+	/**
+	 * Prints the counters and the time of every phase (with its share of the total) - one per line.
+	 * 
+	 * @return Printable metrics.
+	 */
+	@Override
+	public synchronized String toString() {
+		StringBuilder out = new StringBuilder();
+		out.append(String.format("steps: %d, moves: %d (%d without deciding), kills: %d, meals: %d, starved: %d, out of bounds: %d%n",
+				steps, moves, skipped, kills, meals, starvations, leftBounds));
+		
+		long total = 0;
+		for (long time : nanos) {
+			total += time;
+		}
+		
+		for (Phase phase : PHASES) {
+			long time = nanos[phase.ordinal()];
+			out.append(String.format("  %-32s %10.2f ms %5.1f%%%n", phase, time / 1e6, total == 0 ? 0 : 100.0 * time / total));
+		}
+		
+		return out.toString();
+	}
+}
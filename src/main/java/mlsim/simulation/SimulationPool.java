@@ -0,0 +1,94 @@
+package mlsim.simulation;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+import mlsim.wrapper.GAWrapper;
+
+/**
+ * SimulationPool hands out simulations with the parameters of a factory,
+ * reusing finished ones (see Simulation.reset()) instead of creating new ones,
+ * so threads running one simulation after another (like the ones of a batch)
+ * don't allocate new planes every time. Any thread can take any spare simulation.
+ * 
+ * The spares are kept by the pool, not by the threads, so they're dropped with it
+ * (threads of an executor may live much longer). There are never more of them
+ * than simulations running at once.
+ * 
+ * A released simulation must not be used anymore - its results can be.
+ * The factory's parameters are read when a simulation is created, so
+ * the pool should not outlive changes to the factory.
+ * 
+ * @author bingis_khan
+ *
+ */
+public class SimulationPool {
+	private final SimulationFactory factory;
+	
+	// Released simulations, the last one first.
+	private final ConcurrentLinkedDeque<Simulation> spares = new ConcurrentLinkedDeque<>();
+	
+	public SimulationPool(SimulationFactory factory) {
+		this.factory = factory;
+	}
+	
+	/**
+	 * Returns a new simulation. It's the same as one created by the factory.
+	 * 
+	 * @param genotypes Solutions to insert to the simulation.
+	 * @param random Random number stream of the simulation.
+	 * @return A newly initialized simulation.
+	 */
+	public Simulation acquire(List<GAWrapper> genotypes, SplittableRandom random) {
+		Simulation simulation = reusable(genotypes);
+		
+		if (simulation != null) {
+			simulation.reset(genotypes, random);
+			return simulation;
+		}
+		
+		return factory.newSimulation(genotypes, random);
+	}
+	
+	/**
+	 * Same as acquire(genotypes, random), but the simulation starts from a layout.
+	 * 
+	 * @param genotypes Solutions to insert to the simulation.
+	 * @param layout Start of the simulation. (see SimulationFactory.setLayouts())
+	 * @return A newly initialized simulation.
+	 */
+	public Simulation acquire(List<GAWrapper> genotypes, Layout layout) {
+		Simulation simulation = reusable(genotypes);
+		
+		if (simulation != null) {
+			simulation.reset(genotypes, layout);
+			return simulation;
+		}
+		
+		return factory.newSimulation(genotypes, layout);
+	}
+	
+	/**
+	 *  Takes a spare simulation, if there is one that can hold these genotypes.
+	 *  One that can't is dropped, as the next genotypes are usually the same.
+	 */
+	private Simulation reusable(List<GAWrapper> genotypes) {
+		Simulation simulation = spares.pollFirst();
+		
+		if (simulation != null && simulation.canHold(genotypes)) {
+			return simulation;
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Gives a simulation back, so the next acquire() can reuse it.
+	 * 
+	 * @param simulation Simulation from this pool.
+	 */
+	public void release(Simulation simulation) {
+		spares.addFirst(simulation);
+	}
+}
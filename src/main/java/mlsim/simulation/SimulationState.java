@@ -1,28 +1,183 @@
 package mlsim.simulation;
 
 import java.util.List;
+import java.util.random.RandomGenerator;
 
 /**
- * SimulationState is a class that contains:
+ * SimulationState is a read-only view of a simulation which contains:
  *  - placement of agents on this simulation's plane.
  *  - placement of food.
+ *  - a source of randomness for whoever looks at this state.
+ * 
+ * It's backed by the simulation's own indexes, so it always shows the current state
+ * and one instance can be reused for the whole simulation. Asking about a cell
+ * (agentAt(), foodAt(), ...) is much faster than going through the lists.
  * 
  * @author bingis_khan
  *
  */
 public class SimulationState {
-	private final List<? extends Entity> agents, food;
+	private final AgentStore store;
+	private final OccupancyGrid grid;
+	private final FoodLayer food;
+	private final RandomGenerator random;
+	
+	// The last nearest food query and its answer, valid while the food has this version.
+	// An agent's genotype and its simulation often ask about the same cell one after another.
+	// (every view is only used by one thread at a time)
+	private int lastX = -1, lastY, lastVersion, lastNearest;
 	
-	SimulationState(List<? extends Entity> agents, List<? extends Entity> food) {
-		this.agents = agents;
+	SimulationState(AgentStore store, OccupancyGrid grid, FoodLayer food, RandomGenerator random) {
+		this.store = store;
+		this.grid = grid;
 		this.food = food;
+		this.random = random;
 	}
 	
+	/**
+	 * Returns a list of all agents. (live - it changes along with the simulation)
+	 * 
+	 * @return List of agents.
+	 */
 	public List<? extends Entity> agents() {
-		return agents;
+		return store.views();
 	}
 	
+	/**
+	 * Returns a list of all food samples. It has to be rebuilt after the food changes,
+	 * so prefer foodAt() and nearestFood().
+	 * 
+	 * @return List of food samples.
+	 */
 	public List<? extends Entity> food() {
-		return food;
+		return food.asList();
+	}
+	
+	/**
+	 * Checks if these coordinates lie on the plane.
+	 * 
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 * @return True if they're in bounds.
+	 */
+	public boolean inBounds(int x, int y) {
+		return grid.inBounds(x, y);
+	}
+	
+	/**
+	 * Returns the agent on these coordinates.
+	 * 
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 * @return The agent or null if there is none (or the coordinates are out of bounds).
+	 */
+	public Entity agentAt(int x, int y) {
+		if (!grid.inBounds(x, y)) {
+			return null;
+		}
+		
+		int slot = grid.agentAt(x, y);
+		return slot == OccupancyGrid.EMPTY ? null : store.view(slot);
+	}
+	
+	/**
+	 * Checks if there is food on these coordinates.
+	 * 
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 * @return True if there is food. (false if they're out of bounds)
+	 */
+	public boolean foodAt(int x, int y) {
+		return grid.inBounds(x, y) && food.has(x, y);
+	}
+	
+	/**
+	 * Returns the food sample closest to these coordinates in taxicab distance.
+	 * If there are more, the first one row by row wins. (the same one as
+	 * the first closest one in food())
+	 * 
+	 * @param x X coordinate. (on the plane)
+	 * @param y Y coordinate. (on the plane)
+	 * @return Closest food sample or null if there is no food.
+	 */
+	public Entity nearestFood(int x, int y) {
+		int cell = nearestFoodCell(x, y);
+		
+		if (cell == -1) {
+			return null;
+		}
+		
+		return new Food(cell % grid.width(), cell / grid.width());
+	}
+	
+	/**
+	 *  Same as nearestFood(), but returns the cell of the food (y * width + x) or -1.
+	 */
+	int nearestFoodCell(int x, int y) {
+		if (x != lastX || y != lastY || food.version() != lastVersion) {
+			lastNearest = food.nearest(x, y);
+			lastX = x;
+			lastY = y;
+			lastVersion = food.version();
+		}
+		
+		return lastNearest;
+	}
+	
+	/**
+	 * Counts the agents around these coordinates - in the square
+	 * with this radius, without the middle cell.
+	 * 
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 * @param radius How far to look. (1 means the 8 neighbours)
+	 * @return Number of agents around.
+	 */
+	public int agentsAround(int x, int y, int radius) {
+		int agents = 0;
+		
+		for (int cy = y - radius; cy <= y + radius; cy++) {
+			for (int cx = x - radius; cx <= x + radius; cx++) {
+				if ((cx != x || cy != y) && grid.inBounds(cx, cy) && grid.agentAt(cx, cy) != OccupancyGrid.EMPTY) {
+					agents++;
+				}
+			}
+		}
+		
+		return agents;
+	}
+	
+	/**
+	 * Counts the food samples around these coordinates - in the square
+	 * with this radius, without the middle cell.
+	 * 
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 * @param radius How far to look. (1 means the 8 neighbours)
+	 * @return Number of food samples around.
+	 */
+	public int foodAround(int x, int y, int radius) {
+		int samples = 0;
+		
+		for (int cy = y - radius; cy <= y + radius; cy++) {
+			for (int cx = x - radius; cx <= x + radius; cx++) {
+				if ((cx != x || cy != y) && foodAt(cx, cy)) {
+					samples++;
+				}
+			}
+		}
+		
+		return samples;
+	}
+	
+	/**
+	 * Returns the random number generator that algorithms should use
+	 * when they make random decisions. (so simulations stay reproducible,
+	 * even when agents are evaluated in parallel)
+	 * 
+	 * @return Random number generator.
+	 */
+	public RandomGenerator random() {
+		return random;
 	}
 }
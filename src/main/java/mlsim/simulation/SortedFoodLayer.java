@@ -0,0 +1,492 @@
+package mlsim.simulation;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import mlsim.util.IntList;
+import mlsim.util.RadixSort;
+
+/**
+ * SortedFoodLayer is a FoodLayer which stores the cells (y * width + x) of the food
+ * samples in a sorted array, so its memory depends on the amount of food,
+ * not on the size of the plane. The order lets it find the closest food row by row
+ * and merge whole batches of cells with the food. Checking a single cell is
+ * a lookup in a CellMap of the same cells.
+ *
+ * Changes to the array are done in batches. Placed samples wait in a buffer until someone
+ * looks for the closest food (or at the list) - then they're radix sorted and merged into
+ * the array all at once. Taken and consumed samples are only removed from the lookup
+ * right away - they stay in the array (skipped when looking for food) until taken()
+ * removes them all in one pass at the end of the step. So placing all the food of
+ * a new simulation or eating in a whole step costs O(food), not O(food^2).
+ *
+ * Looking at the food is safe from more threads (the first look merges the placed samples),
+ * changing it is not.
+ *
+ * @author bingis_khan
+ *
+ */
+class SortedFoodLayer implements FoodLayer {
+	private final int width, height;
+	
+	// Every cell with food, for has().
+	private final CellMap samples = new CellMap(16);
+	
+	// Cells with food, sorted. (the first size)
+	private int[] cells = new int[16];
+	private int size = 0;
+	private int count = 0;
+	
+	// Placed samples, not merged into cells yet. Set when the placed ones were merged
+	// - volatile, so threads which see it set also see the merged cells.
+	private int[] placed = new int[16];
+	private int placedSize = 0;
+	private volatile boolean merged = true;
+	
+	// Bit for every index in cells which was taken or consumed,
+	// but stays there until taken() is called.
+	private long[] gone = new long[1];
+	private int takenSize = 0;
+	private int consumed = 0;
+	
+	private final RadixSort sorter = new RadixSort();
+	private int[] buffer = new int[0];
+	
+	// Cached list view. Null when the food has changed since it was built.
+	private List<Food> view;
+	
+	// Goes up with every change. (see version())
+	private int version = 0;
+	
+	SortedFoodLayer(int width, int height) {
+		this.width = width;
+		this.height = height;
+	}
+	
+	/**
+	 *  Converts coordinates to the index of a cell.
+	 */
+	private int cell(int x, int y) {
+		assert x >= 0 && x < width && y >= 0 && y < height : "Coordinates (" + x + ", " + y + ") are out of bounds.";
+		return y * width + x;
+	}
+	
+	/**
+	 *  Merges the placed samples into cells, if there are any.
+	 */
+	private void merge() {
+		if (!merged) {
+			mergePlaced();
+		}
+	}
+	
+	private synchronized void mergePlaced() {
+		// Someone else could have done it in the meantime.
+		if (merged) {
+			return;
+		}
+		
+		assert takenSize == 0 : "Food can only be placed between steps.";
+		
+		sorter.sort(placed, placedSize);
+		
+		int total = size + placedSize;
+		if (buffer.length < total) {
+			buffer = new int[Math.max(total, 2 * cells.length)];
+		}
+		
+		// Both runs are sorted, so they're merged from the front.
+		int i = 0, j = 0, to = 0;
+		while (i < size && j < placedSize) {
+			assert cells[i] != placed[j] : "Tried to place food on a cell which already has food.";
+			buffer[to++] = cells[i] < placed[j] ? cells[i++] : placed[j++];
+		}
+		
+		while (i < size) buffer[to++] = cells[i++];
+		while (j < placedSize) buffer[to++] = placed[j++];
+		
+		int[] old = cells;
+		cells = buffer;
+		buffer = old;
+		
+		size = total;
+		placedSize = 0;
+		merged = true;
+	}
+	
+	/**
+	 *  Index of the first sorted cell which is not smaller than this one,
+	 *  if it's in [low, high). Otherwise high.
+	 */
+	private int lowerBound(int cell, int low, int high) {
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			
+			if (cells[mid] < cell) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		
+		return low;
+	}
+	
+	/**
+	 *  Same as lowerBound(), if the index is known to be at least from. It's found by checking
+	 *  further and further cells, so it costs O(log(index - from)), not O(log(size)).
+	 */
+	private int lowerBoundAfter(int cell, int from) {
+		int step = 1;
+		while (from + step < size && cells[from + step] < cell) {
+			step <<= 1;
+		}
+		
+		return lowerBound(cell, from + (step >> 1), Math.min(from + step + 1, size));
+	}
+	
+	/**
+	 *  Same as lowerBoundAfter(), if the index is known to be at most until.
+	 */
+	private int lowerBoundBefore(int cell, int until) {
+		int step = 1;
+		while (until - step >= 0 && cells[until - step] >= cell) {
+			step <<= 1;
+		}
+		
+		return lowerBound(cell, Math.max(until - step + 1, 0), until - (step >> 1));
+	}
+	
+	/**
+	 *  Index of this cell in the sorted cells or -1 if it has no food.
+	 */
+	private int indexOf(int cell) {
+		merge();
+		
+		int i = lowerBound(cell, 0, size);
+		return i < size && cells[i] == cell ? i : -1;
+	}
+	
+	/**
+	 *  Checks if the food on this index of the sorted cells was not taken yet.
+	 */
+	private boolean live(int i) {
+		return takenSize == 0 || (gone[i >>> 6] & 1L << i) == 0;
+	}
+	
+	/**
+	 *  Removes the food on this index of the sorted cells, until taken() removes it from the array.
+	 */
+	private void remove(int i) {
+		// Every index in cells must have a bit, since they're all checked.
+		if (gone.length <= (size - 1) >>> 6) {
+			gone = Arrays.copyOf(gone, Math.max(2 * gone.length, ((size - 1) >>> 6) + 1));
+		}
+		
+		samples.remove(cells[i]);
+		gone[i >>> 6] |= 1L << i;
+		takenSize++;
+	}
+	
+	@Override
+	public boolean has(int x, int y) {
+		return samples.get(cell(x, y)) != CellMap.ABSENT;
+	}
+	
+	@Override
+	public void place(int x, int y) {
+		assert !has(x, y) : "Tried to place food on a cell which already has food.";
+		
+		samples.put(cell(x, y), 0);
+		placed = append(placed, placedSize++, cell(x, y));
+		merged = false;
+		
+		count++;
+		changed();
+	}
+	
+	@Override
+	public void consume(int x, int y) {
+		take(x, y);
+		consumed++;
+		
+		count--;
+		changed();
+	}
+	
+	/**
+	 * Removes the food sample on these coordinates. It stays in the sorted array
+	 * until taken() removes every taken (and consumed) sample at once.
+	 * 
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 */
+	@Override
+	public void take(int x, int y) {
+		assert has(x, y) : "Tried to eat food from a cell which does not have any.";
+		
+		remove(indexOf(cell(x, y)));
+	}
+	
+	/**
+	 * Takes the food from these cells by merging them with the cells with food.
+	 * Costs O(food + size).
+	 * 
+	 * @param cells Cells (y * width + x), sorted and different.
+	 * @param size Number of cells.
+	 * @param eaten Where to append the cells with food.
+	 */
+	@Override
+	public void takeFrom(int[] cells, int size, IntList eaten) {
+		merge();
+		
+		for (int i = 0, j = 0; i < size && j < this.size; ) {
+			assert i == 0 || cells[i - 1] < cells[i] : "Cells to take food from must be sorted and different.";
+			
+			if (cells[i] < this.cells[j]) {
+				i++;
+			} else if (cells[i] > this.cells[j]) {
+				j++;
+			} else {
+				remove(j);
+				eaten.add(cells[i]);
+				
+				i++;
+				j++;
+			}
+		}
+	}
+	
+	@Override
+	public void taken(int amount) {
+		assert amount + consumed == takenSize : "Number of taken samples does not match.";
+		
+		if (takenSize > 0) {
+			// Keep the cells which were not taken, in one pass.
+			int kept = 0;
+			for (int i = 0; i < size; i++) {
+				if (live(i)) {
+					cells[kept++] = cells[i];
+				}
+			}
+			
+			assert size - kept == takenSize : "Some of the taken samples were not on the plane.";
+			
+			Arrays.fill(gone, 0, Math.min(((size - 1) >>> 6) + 1, gone.length), 0L);
+			size = kept;
+		}
+		
+		takenSize = 0;
+		consumed = 0;
+		
+		count -= amount;
+		changed();
+	}
+	
+	/**
+	 *  Appends a cell to an array with this many cells, growing it if needed.
+	 */
+	private static int[] append(int[] array, int length, int cell) {
+		if (length == array.length) {
+			array = Arrays.copyOf(array, 2 * length);
+		}
+		
+		array[length] = cell;
+		return array;
+	}
+	
+	/**
+	 *  Drops everything cached about the food.
+	 */
+	private void changed() {
+		view = null;
+		version++;
+	}
+	
+	@Override
+	public int version() {
+		return version;
+	}
+	
+	/**
+	 * Finds the food sample closest to these coordinates. (see FoodLayer.nearest())
+	 * 
+	 * Rows are checked outwards from y - in each one, the closest food on either side of x
+	 * is found with a search which starts where the search in the previous row ended.
+	 * Rows further than the closest food so far are skipped. If there are so many rows
+	 * to check that it's cheaper to check every sample, it does that instead.
+	 * 
+	 * @param x X coordinate. (on the plane)
+	 * @param y Y coordinate. (on the plane)
+	 * @return Cell (y * width + x) of the closest food or -1 if there is none.
+	 */
+	@Override
+	public int nearest(int x, int y) {
+		merge();
+		
+		if (count == 0) {
+			return -1;
+		}
+		
+		// Binary searches which cost about as much as checking every sample.
+		final int searches = size / (32 - Integer.numberOfLeadingZeros(size)) + 1;
+		
+		// Where the searches in the rows above and below ended.
+		int above = lowerBound(y * width + x, 0, size),
+			below = above;
+		
+		long closest = closestInRow(y, x, 0, above, Long.MAX_VALUE);
+		
+		for (int dy = 1; dy <= (int)(closest >>> 32) && (y - dy >= 0 || y + dy < height); dy++) {
+			if (2 * dy > searches) {
+				return nearestOfAll(x, y);
+			}
+			
+			if (y - dy >= 0) {
+				above = lowerBoundBefore((y - dy) * width + x, above);
+				closest = closestInRow(y - dy, x, dy, above, closest);
+			}
+			
+			if (y + dy < height) {
+				below = lowerBoundAfter((y + dy) * width + x, below);
+				closest = closestInRow(y + dy, x, dy, below, closest);
+			}
+		}
+		
+		return (int)closest;
+	}
+	
+	/**
+	 *  Compares the closest food so far with the food closest to x on both sides in a row,
+	 *  dy rows from the start. i is the index of the first cell not before x in that row.
+	 *  The food is the distance (upper half) and the cell in one long, so the closer one
+	 *  - or with the same distance, the first one - is the smaller number.
+	 *  Cells which were already eaten in this step are skipped.
+	 */
+	private long closestInRow(int row, int x, int dy, int i, long closest) {
+		int rowStart = row * width;
+		
+		int left = i - 1;
+		while (left >= 0 && cells[left] >= rowStart && !live(left)) left--;
+		
+		if (left >= 0 && cells[left] >= rowStart) {
+			closest = Math.min(closest, (long)(x - (cells[left] - rowStart) + dy) << 32 | cells[left]);
+		}
+		
+		int right = i;
+		while (right < size && cells[right] < rowStart + width && !live(right)) right++;
+		
+		if (right < size && cells[right] < rowStart + width) {
+			closest = Math.min(closest, (long)(cells[right] - rowStart - x + dy) << 32 | cells[right]);
+		}
+		
+		return closest;
+	}
+	
+	/**
+	 *  Same as nearest(), but checks every food sample.
+	 */
+	private int nearestOfAll(int x, int y) {
+		int closest = -1,
+			distance = Integer.MAX_VALUE;
+		
+		// In order, so the first one of the closest wins.
+		for (int i = 0; i < size; i++) {
+			int fx = cells[i] % width,
+				fy = cells[i] / width,
+				d = Math.abs(fx - x) + Math.abs(fy - y);
+			
+			if (d < distance && live(i)) {
+				closest = cells[i];
+				distance = d;
+			}
+		}
+		
+		return closest;
+	}
+	
+	@Override
+	public void clear() {
+		samples.clear();
+		size = 0;
+		placedSize = 0;
+		Arrays.fill(gone, 0L);
+		takenSize = 0;
+		consumed = 0;
+		merged = true;
+		
+		count = 0;
+		changed();
+	}
+	
+	/**
+	 * Writes the number of food samples and their cells, in order. (see readFrom())
+	 * 
+	 * @param out Where to write.
+	 * @throws IOException If it cannot be written.
+	 */
+	@Override
+	public void writeTo(DataOutput out) throws IOException {
+		assert takenSize == 0 : "Food can only be written between steps.";
+		merge();
+		
+		out.writeInt(size);
+		for (int i = 0; i < size; i++) {
+			out.writeInt(cells[i]);
+		}
+	}
+	
+	@Override
+	public void readFrom(DataInput in) throws IOException {
+		clear();
+		
+		int amount = in.readInt();
+		if (amount < 0 || (long)amount > (long)width * height) {
+			throw new IOException("Invalid amount of food: " + amount + ".");
+		}
+		
+		cells = new int[Math.max(amount, 16)];
+		for (int i = 0; i < amount; i++) {
+			int cell = in.readInt();
+			if (cell < 0 || cell >= (long)width * height || (i > 0 && cell <= cells[i - 1])) {
+				throw new IOException("Invalid food cell: " + cell + ".");
+			}
+			
+			cells[i] = cell;
+			samples.put(cell, 0);
+		}
+		
+		size = amount;
+		count = amount;
+		changed();
+	}
+	
+	@Override
+	public int count() {
+		return count;
+	}
+	
+	@Override
+	public synchronized List<Food> asList() {
+		if (view == null) {
+			merge();
+			
+			List<Food> samples = new ArrayList<>(count);
+			for (int i = 0; i < size; i++) {
+				if (live(i)) {
+					samples.add(new Food(cells[i] % width, cells[i] / width));
+				}
+			}
+			
+			assert samples.size() == count : "Food count does not match the number of cells.";
+			view = Collections.unmodifiableList(samples);
+		}
+		
+		return view;
+	}
+}
@@ -0,0 +1,69 @@
+package mlsim.simulation;
+
+/**
+ * SparseOccupancyGrid is an OccupancyGrid which only remembers the occupied cells
+ * (in a CellMap), so its memory depends on the number of agents, not on the size of the plane.
+ * Lookups are a bit slower than in a DenseOccupancyGrid.
+ *
+ * Unlike the dense one, it must not be changed from more threads at once, even on different cells.
+ *
+ * @author bingis_khan
+ *
+ */
+class SparseOccupancyGrid implements OccupancyGrid {
+	private final int width, height;
+	
+	// Slots of the agents, by their cells.
+	private final CellMap agents;
+	
+	SparseOccupancyGrid(int width, int height, int agents) {
+		this.width = width;
+		this.height = height;
+		
+		this.agents = new CellMap(agents);
+	}
+	
+	@Override
+	public int width() {
+		return width;
+	}
+	
+	@Override
+	public int height() {
+		return height;
+	}
+	
+	/**
+	 *  Converts coordinates to the index of a cell.
+	 */
+	private int cell(int x, int y) {
+		assert inBounds(x, y) : "Coordinates (" + x + ", " + y + ") are out of bounds.";
+		return y * width + x;
+	}
+	
+	@Override
+	public int agentAt(int x, int y) {
+		// CellMap.ABSENT is the same as EMPTY.
+		return agents.get(cell(x, y));
+	}
+	
+	@Override
+	public void putAgent(int slot, int x, int y) {
+		assert agentAt(x, y) == EMPTY : "Tried to put an agent on an occupied cell.";
+		agents.put(cell(x, y), slot);
+	}
+	
+	@Override
+	public void removeAgent(int slot, int x, int y) {
+		if (inBounds(x, y) && agentAt(x, y) == slot) {
+			agents.remove(cell(x, y));
+		}
+	}
+	
+	@Override
+	public void moveSlot(int x, int y, int from, int to) {
+		if (inBounds(x, y) && agentAt(x, y) == from) {
+			agents.put(cell(x, y), to);
+		}
+	}
+}
@@ -0,0 +1,15 @@
+package mlsim.simulation;
+
+/**
+ * How agents in a simulation move during a single step.
+ * 
+ *  - SEQUENTIAL: agents move one by one, in order. An agent sees the moves 
+ *    of everyone before it, and it kills any agent on the cell it moves to.
+ *  - SIMULTANEOUS: every agent decides its move on the same (frozen) state,
+ *    which is done in parallel. Then agents which ended up on the same cell
+ *    fight - the one with more energy wins. It's reproducible no matter
+ *    how many threads are used.
+ */
+public enum StepMode {
+	SEQUENTIAL, SIMULTANEOUS
+}
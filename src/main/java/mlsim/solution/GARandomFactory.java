@@ -2,7 +2,7 @@ package mlsim.solution;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.random.RandomGenerator;
 
 import mlsim.wrapper.GAWrapper;
 
@@ -14,7 +14,6 @@ import mlsim.wrapper.GAWrapper;
  *
  */
 public class GARandomFactory {
-	private static final Random RAND = new Random();
 	
 	/**
 	 * Generates a population of random GeneticAlgorithms, automatically wrapping them
@@ -25,26 +24,27 @@ public class GARandomFactory {
 	 * @param populationSize Size of the population ie. how many GAs to generate.
 	 * @param preSize Precondition size.
 	 * @param postSize Postcondition size.
+	 * @param rand Random number generator to generate them with.
 	 * @return Population of size populationSize of random genetic algorithms.
 	 */
-	public static List<GAWrapper> generatePopulation(int minSize, int maxSize, int populationSize, int preSize, int postSize) {
+	public static List<GAWrapper> generatePopulation(int minSize, int maxSize, int populationSize, int preSize, int postSize, RandomGenerator rand) {
 		assert minSize >= 1 : "Minimum size cannot be smaller than 1.";
 		assert maxSize >= minSize : "Maximum size must be greater or equal to minimum size.";
 		assert populationSize > 0 : "Population size cannot be empty, smaller than 0.";
 		
 		List<GAWrapper> population = new ArrayList<GAWrapper>();
 		for (int i = 0; i < populationSize; i++) {
-			population.add(new GAWrapper(generateGeneticAlgorithm(minSize, maxSize, preSize, postSize)));
+			population.add(new GAWrapper(generateGeneticAlgorithm(minSize, maxSize, preSize, postSize, rand)));
 		}
 		
 		assert population.size() == populationSize : "Size of population list must be equal to populationSize.";
 		return population;
 	}
 
-	private static GeneticAlgorithm generateGeneticAlgorithm(int minSize, int maxSize, int preSize, int postSize) {
+	private static GeneticAlgorithm generateGeneticAlgorithm(int minSize, int maxSize, int preSize, int postSize, RandomGenerator rand) {
 		int ruleSize = preSize + postSize;
-		int randomizedSize = minSize + RAND.nextInt(maxSize - minSize + 1);
-		boolean[] randomArray = randomBinaryArray(randomizedSize * ruleSize);
+		int randomizedSize = minSize + rand.nextInt(maxSize - minSize + 1);
+		boolean[] randomArray = randomBinaryArray(randomizedSize * ruleSize, rand);
 		
 		GeneticAlgorithm ga = new GeneticAlgorithm(randomArray, ruleSize, preSize);
 		
@@ -53,12 +53,12 @@ public class GARandomFactory {
 		return ga;
 	}
 	
-	private static boolean[] randomBinaryArray(int size) {
+	private static boolean[] randomBinaryArray(int size, RandomGenerator rand) {
 		assert size > 0;
 		
 		boolean[] randomArray = new boolean[size];
 		for (int i = 0; i < size; i++) {
-			randomArray[i] = RAND.nextBoolean();
+			randomArray[i] = rand.nextBoolean();
 		}
 		
 		return randomArray;
@@ -3,7 +3,7 @@ package mlsim.solution;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
+import java.util.random.RandomGenerator;
 
 import mlsim.operators.Crossover;
 import mlsim.operators.Mutable;
@@ -19,7 +19,6 @@ import mlsim.util.Tuple;
  *
  */
 public class GeneticAlgorithm implements Crossover<GeneticAlgorithm>, Mutable<GeneticAlgorithm> {
-	private static final Random RAND = new Random();
 	private final List<Rule> rules;
 	private final int pre, post;
 	
@@ -82,21 +81,21 @@ public class GeneticAlgorithm implements Crossover<GeneticAlgorithm>, Mutable<Ge
 	}
 
 	@Override
-	public GeneticAlgorithm mutate() {
-		int mutatePoint = RAND.nextInt(size());
+	public GeneticAlgorithm mutate(RandomGenerator rand) {
+		int mutatePoint = rand.nextInt(size());
 		
-		return new GeneticAlgorithm(to(mutatePoint), ruleAt(mutatePoint).ruleMutate(), from(mutatePoint), pre, post);
+		return new GeneticAlgorithm(to(mutatePoint), ruleAt(mutatePoint).ruleMutate(rand), from(mutatePoint), pre, post);
 	}
 
 	@Override
-	public Tuple<GeneticAlgorithm, GeneticAlgorithm> crossover(GeneticAlgorithm other) {
-		int coPoint1 = RAND.nextInt(rules.size()),
-			coPoint2 = RAND.nextInt(other.size());
+	public Tuple<GeneticAlgorithm, GeneticAlgorithm> crossover(GeneticAlgorithm other, RandomGenerator rand) {
+		int coPoint1 = rand.nextInt(rules.size()),
+			coPoint2 = rand.nextInt(other.size());
 		
 		Rule rule1 = ruleAt(coPoint1),
 			 rule2 = other.ruleAt(coPoint2);
 		
-		Tuple<Rule, Rule> coTuple = rule1.rulesCrossover(rule2);
+		Tuple<Rule, Rule> coTuple = rule1.rulesCrossover(rule2, rand);
 		
 		GeneticAlgorithm coGa1 = new GeneticAlgorithm(other.to(coPoint2), coTuple.first(), from(coPoint1), pre, post),
 						 coGa2 = new GeneticAlgorithm(to(coPoint1), coTuple.second(), other.from(coPoint2), pre, post);
@@ -208,7 +207,6 @@ public class GeneticAlgorithm implements Crossover<GeneticAlgorithm>, Mutable<Ge
  *
  */
 class Rule {
-	private static final Random RAND = new Random();
 	private final boolean[] preCondition;
 	private final boolean[] postCondition;
 	
@@ -369,9 +367,8 @@ class Rule {
 
 	}
 
-	Rule ruleMutate() { 
-		Random rn = new Random();
-		int mutatePoint = rn.nextInt(size());
+	Rule ruleMutate(RandomGenerator rand) { 
+		int mutatePoint = rand.nextInt(size());
 		Rule result = new Rule(this);
 		if (mutatePoint >= preCondition.length) {
 			postConditionMutate(result, mutatePoint - preCondition.length);
@@ -400,8 +397,8 @@ class Rule {
 		System.arraycopy(onerule,  preCondition.length,  postCondition,  0, postCondition.length);
 	}
 
-	Tuple<Rule, Rule> rulesCrossover(Rule other) {
-		int crossoverPoint = RAND.nextInt(size());
+	Tuple<Rule, Rule> rulesCrossover(Rule other, RandomGenerator rand) {
+		int crossoverPoint = rand.nextInt(size());
 		Rule result1 = new Rule(this);
 		Rule result2 = new Rule(other);
 		// xd. Gdy masz rule1 A(crossoverPoint)B, rule2 C(...)D, dla ABCD bdcych cigiem bitw to wyglda to tak:
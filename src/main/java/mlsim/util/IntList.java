@@ -0,0 +1,70 @@
+package mlsim.util;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive ints. Used instead of List<Integer>
+ * where boxing every element would be too slow.
+ * 
+ * @author bingis_khan
+ *
+ */
+public class IntList {
+	private int[] elements;
+	private int size = 0;
+	
+	public IntList() {
+		this(16);
+	}
+	
+	public IntList(int capacity) {
+		elements = new int[Math.max(capacity, 1)];
+	}
+	
+	/**
+	 * Appends an element at the end of this list.
+	 * 
+	 * @param element Element to add.
+	 */
+	public void add(int element) {
+		if (size == elements.length) {
+			elements = Arrays.copyOf(elements, size * 2);
+		}
+		
+		elements[size++] = element;
+	}
+	
+	/**
+	 * Returns the element at this index.
+	 * 
+	 * @param index Index of the element.
+	 * @return The element.
+	 */
+	public int get(int index) {
+		assert index >= 0 && index < size : "Index " + index + " out of bounds for size " + size;
+		return elements[index];
+	}
+	
+	/**
+	 * Returns the number of elements.
+	 * 
+	 * @return Size of this list.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Sorts the elements in ascending order.
+	 */
+	public void sort() {
+		Arrays.sort(elements, 0, size);
+	}
+	
+	/**
+	 * Removes all elements. (keeps the allocated memory)
+	 */
+	public void clear() {
+		size = 0;
+	}
+}
@@ -0,0 +1,106 @@
+package mlsim.util;
+
+import java.util.Arrays;
+
+/**
+ * RadixSort sorts non-negative int keys (and optionally a value that goes with every key)
+ * in linear time - it's an LSD radix sort, 11 bits per pass, with only as many passes
+ * as the largest key needs. It's stable, so values of equal keys keep their order.
+ *
+ * The buffers are kept between sorts, so once they're big enough, sorting does not allocate.
+ * Not thread-safe - every thread needs its own.
+ *
+ * @author bingis_khan
+ *
+ */
+public class RadixSort {
+	private static final int BITS = 11,
+							 RADIX = 1 << BITS,
+							 MASK = RADIX - 1;
+	
+	private final int[] counts = new int[RADIX];
+	private int[] keyBuffer = new int[0],
+				  valueBuffer = new int[0];
+	
+	/**
+	 * Sorts the first size keys in ascending order.
+	 * 
+	 * @param keys Keys. (not negative)
+	 * @param size Number of keys to sort.
+	 */
+	public void sort(int[] keys, int size) {
+		sort(keys, null, size);
+	}
+	
+	/**
+	 * Sorts the first size keys in ascending order and moves their values with them.
+	 * 
+	 * @param keys Keys. (not negative)
+	 * @param values Value of every key or null if there are none.
+	 * @param size Number of keys to sort.
+	 */
+	public void sort(int[] keys, int[] values, int size) {
+		if (size < 2) {
+			return;
+		}
+		
+		if (keyBuffer.length < size) {
+			keyBuffer = new int[size];
+		}
+		
+		if (values != null && valueBuffer.length < size) {
+			valueBuffer = new int[size];
+		}
+		
+		// Digits above the largest key are all zeros - no need to sort by them.
+		int all = 0;
+		for (int i = 0; i < size; i++) {
+			all |= keys[i];
+		}
+		
+		assert all >= 0 : "Radix sort only sorts non-negative keys.";
+		
+		int[] fromKeys = keys, fromValues = values,
+			  toKeys = keyBuffer, toValues = valueBuffer;
+		
+		int shift = 0;
+		do {
+			Arrays.fill(counts, 0);
+			for (int i = 0; i < size; i++) {
+				counts[(fromKeys[i] >>> shift) & MASK]++;
+			}
+			
+			// Counts to where every digit starts.
+			for (int digit = 0, start = 0; digit < RADIX; digit++) {
+				int count = counts[digit];
+				counts[digit] = start;
+				start += count;
+			}
+			
+			for (int i = 0; i < size; i++) {
+				int to = counts[(fromKeys[i] >>> shift) & MASK]++;
+				
+				toKeys[to] = fromKeys[i];
+				if (fromValues != null) {
+					toValues[to] = fromValues[i];
+				}
+			}
+			
+			int[] tmp = fromKeys; fromKeys = toKeys; toKeys = tmp;
+			if (values != null) {
+				tmp = fromValues; fromValues = toValues; toValues = tmp;
+			}
+			
+			shift += BITS;
+		} while (shift < Integer.SIZE && (all >>> shift) != 0);
+		
+		// After an odd number of passes, the sorted keys are in the buffers.
+		if (fromKeys != keys) {
+			System.arraycopy(fromKeys, 0, keys, 0, size);
+			
+			if (values != null) {
+				System.arraycopy(fromValues, 0, values, 0, size);
+			}
+		}
+	}
+}
@@ -17,12 +17,16 @@ import mlsim.simulation.SimulationState;
 class FlagSetter {
 	private final List<Part> parts = new ArrayList<>();
 	
+	// Number of flags of every part, and all of them.
+	private final List<Integer> sizes = new ArrayList<>();
+	private int size = 0;
+	
 	static FlagSetter defaultSetter() {
 		FlagSetter flg = new FlagSetter();
 		
 		// Flags
-		flg.add(flg::closestFood);
-		flg.add(flg::space);
+		flg.add(flg::closestFood, 5);
+		flg.add(flg::space, 3*4);
 		
 		return flg;
 	}
@@ -37,120 +41,71 @@ class FlagSetter {
 	 * @return SimulationState converted into flags for our GA.
 	 */
 	public boolean[] convert(Entity self, SimulationState s) {
-		List<boolean[]> flags = new ArrayList<>();
-		for (Part p : parts) {
-			flags.add(p.convert(self, s));
-		}
-		
-		return merge(flags);
-	}
-	
-	private boolean[] merge(List<boolean[]> arrList) {
-		// Determine the size of the merged array.
-		int size = 0;
-		for (boolean[] arr : arrList) {
-			size += arr.length;
-		}
+		// Every part sets its flags right in the result, so it's the only allocation.
+		boolean[] flags = new boolean[size];
 		
-		// Copy it into that.
-		int current = 0;
-		boolean[] merged = new boolean[size];
-		for (boolean[] arr : arrList) {
-			System.arraycopy(arr, 0, merged, current, arr.length);
-			current += arr.length;
+		int offset = 0;
+		for (int i = 0; i < parts.size(); i++) {
+			parts.get(i).convert(self, s, flags, offset);
+			offset += sizes.get(i);
 		}
 		
-		assert current == size : "current is supposed to point to the end of the array at the end of execution.";
-		return merged;
+		return flags;
 	}
 	
-	private void add(Part p) {
+	private void add(Part p, int flags) {
 		parts.add(p);
+		sizes.add(flags);
+		size += flags;
 	}
 	
 	/* PARTS */
 	
-	private boolean[] closestFood(Entity self, SimulationState s) {
-		Entity closestFood = Wrapper.smallestDistance(self, s.food());
-		
-		boolean[] flags = new boolean[5];
+	private void closestFood(Entity self, SimulationState s, boolean[] flags, int i) {
+		Entity closestFood = s.nearestFood(self.getX(), self.getY());
 		
 		if (closestFood == null) {
-			flags[4] = true;
+			flags[i + 4] = true;
 		} else {
 			Move moveFood = Wrapper.moveBalanced(self, closestFood);
 			
 			switch (moveFood) {
-				case NORTH: flags[0] = true; break;
-				case SOUTH: flags[1] = true; break;
-				case WEST:  flags[2] = true; break;
-				case EAST:  flags[3] = true; break;
+				case NORTH: flags[i] = true; break;
+				case SOUTH: flags[i + 1] = true; break;
+				case WEST:  flags[i + 2] = true; break;
+				case EAST:  flags[i + 3] = true; break;
 			}
 		}
-		
-		return flags;
 	}
 	
-	private boolean[] space(Entity self, SimulationState s) {
-		List<? extends Entity> agents = s.agents();
-		List<? extends Entity> food = s.food();
-		
-		boolean[] arr = new boolean[3*4];
-		
-		// Should be a function.
-		// ... I don't care anymore~~~
-		
-		// N
-		if (entityExistsAt(self.getX(), self.getY() - 1, agents, self)) {
-			arr[0] = true;
-		} else if(entityExistsAt(self.getX(), self.getY() - 1, food, self)) {
-			arr[1] = true;
-		} else {
-			arr[2] = true;
-		}
-		
-		// S
-		if (entityExistsAt(self.getX(), self.getY() + 1, agents, self)) {
-			arr[3] = true;
-		} else if(entityExistsAt(self.getX(), self.getY() + 1, food, self)) {
-			arr[4] = true;
-		} else {
-			arr[5] = true;
-		}
-		
-		// W
-		if (entityExistsAt(self.getX() - 1, self.getY(), agents, self)) {
-			arr[6] = true;
-		} else if(entityExistsAt(self.getX() - 1, self.getY() - 1, food, self)) {
-			arr[7] = true;
-		} else {
-			arr[8] = true;
-		}
-		
-		// E
-		if (entityExistsAt(self.getX() + 1, self.getY(), agents, self)) {
-			arr[9] = true;
-		} else if(entityExistsAt(self.getX() + 1, self.getY(), food, self)) {
-			arr[10] = true;
-		} else {
-			arr[11] = true;
-		}
-		
-		return arr;
+	private void space(Entity self, SimulationState s, boolean[] arr, int i) {
+		final int x = self.getX(),
+				  y = self.getY();
+		
+		// For every direction: agent, food or nothing.
+		neighbour(s, x, y - 1, arr, i); // N
+		neighbour(s, x, y + 1, arr, i + 3); // S
+		neighbour(s, x - 1, y, arr, i + 6); // W
+		neighbour(s, x + 1, y, arr, i + 9); // E
 	}
 	
-	private static boolean entityExistsAt(int x, int y, List<? extends Entity> entities, Entity self) {
-		for (Entity e : entities) {
-			if (e.getX() == x && e.getY() == y && self.equals(e)) {
-				return true;
-			}
+	/**
+	 *  Sets one of the three flags, starting at index i, by what's on this cell:
+	 *  an agent, food or nothing. (also when it's out of bounds)
+	 */
+	private static void neighbour(SimulationState s, int x, int y, boolean[] arr, int i) {
+		if (s.agentAt(x, y) != null) {
+			arr[i] = true;
+		} else if (s.foodAt(x, y)) {
+			arr[i + 1] = true;
+		} else {
+			arr[i + 2] = true;
 		}
-		
-		return false;
 	}
 	
 	@FunctionalInterface
 	private interface Part {
-		boolean[] convert(Entity self, SimulationState s);
+		// Sets the part's flags, starting at index i.
+		void convert(Entity self, SimulationState s, boolean[] flags, int i);
 	}
 }
@@ -1,6 +1,6 @@
 package mlsim.wrapper;
 
-import java.util.Random;
+import java.util.random.RandomGenerator;
 
 import mlsim.simulation.Entity;
 import mlsim.simulation.Move;
@@ -17,9 +17,10 @@ public class GAWrapper extends Wrapper<GAWrapper> {
 	
 	private static final FlagSetter setter = FlagSetter.defaultSetter();
 	
-	private final GeneticAlgorithm ga;
+	// Move.values() makes a copy every time.
+	private static final Move[] MOVES = Move.values();
 	
-	private static final Random RAND = new Random();
+	private final GeneticAlgorithm ga;
 	
 	public GAWrapper(GeneticAlgorithm ga) {
 		assert ga.postSize() == POST; // Four movement types: NSWE
@@ -37,15 +38,20 @@ public class GAWrapper extends Wrapper<GAWrapper> {
 		
 		// Sentinel symbolizing that none matched, so we decided, that it makes a random move.
 		if (intMove == -1) {
-			return randomMove();
+			return randomMove(s.random());
 		}
 		
 		return toMove(intMove);
 	}
 	
-	private Move randomMove() {
-		Move[] values = Move.values();
-		return values[RAND.nextInt(values.length)];
+	// Flags only come from the closest food and the neighbours. (see FlagSetter)
+	@Override
+	public boolean isReactive() {
+		return true;
+	}
+	
+	private Move randomMove(RandomGenerator rand) {
+		return MOVES[rand.nextInt(MOVES.length)];
 	}
 	
 	private Move toMove(int i) {
@@ -62,13 +68,13 @@ public class GAWrapper extends Wrapper<GAWrapper> {
 	}
 
 	@Override
-	public GAWrapper mutate() {
-		return new GAWrapper(ga.mutate());
+	public GAWrapper mutate(RandomGenerator rand) {
+		return new GAWrapper(ga.mutate(rand));
 	}
 
 	@Override
-	public Tuple<GAWrapper, GAWrapper> crossover(GAWrapper other) {
-		Tuple<GeneticAlgorithm, GeneticAlgorithm> tuple = ga.crossover(other.ga);
+	public Tuple<GAWrapper, GAWrapper> crossover(GAWrapper other, RandomGenerator rand) {
+		Tuple<GeneticAlgorithm, GeneticAlgorithm> tuple = ga.crossover(other.ga, rand);
 		return new Tuple<GAWrapper, GAWrapper>(new GAWrapper(tuple.first()), new GAWrapper(tuple.second()));
 	}
 	
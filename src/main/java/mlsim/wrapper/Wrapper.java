@@ -17,6 +17,19 @@ public abstract class Wrapper<T extends Wrapper<T>> implements Mutable<T>, Cross
 	
 	public abstract Move evaluate(Entity self, SimulationState s);
 	
+	/**
+	 * Tells if the moves of this wrapper depend only on the agent's four neighbouring cells
+	 * and the direction to the nearest food sample (and on the state's random numbers,
+	 * when it moves randomly). Then an agent keeps making the same move until one of those
+	 * changes, so a simulation can skip asking for a while. (see SimulationFactory.setMacroSteps())
+	 * False by default.
+	 * 
+	 * @return True if it only reacts to what's around the agent.
+	 */
+	public boolean isReactive() {
+		return false;
+	}
+	
 	/**
 	 * Calculates where the main should move to get closer to moveTo.
 	 * However, 'balanced' means, that if the yDistance is greater than xDistance, 
@@ -0,0 +1,58 @@
+package mlsim.console;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import mlsim.wrapper.GAWrapper;
+
+@DisplayName("Command 'batch'")
+public class BatchTest {
+	
+	@Test
+	@DisplayName("with a fixed seed should train the same population on one thread and on many.")
+	public void shouldTrainTheSameOnMoreThreads() {
+		assertEquals(train(1), train(4));
+	}
+	
+	/**
+	 *  Trains a population from a fixed seed on this many threads.
+	 *  Returns everything it printed (fitness of every round) and the trained population.
+	 */
+	private static String train(int threads) {
+		StringBuilder output = new StringBuilder();
+		ConsoleApp consoleApp = new ConsoleApp(null) {
+			@Override
+			public void print(String s) {
+				output.append(s);
+			}
+		};
+		
+		CommandParser parser = new CommandParser(Commands.initialize());
+		String[] commands = { 
+			"seed 42", 
+			"initialize population 1 4 30", 
+			"selector bob 50 49 1", 
+			"set parameters 30 30 2", 
+			"regrowth 0.5", 
+			"threads " + threads, 
+			"batch 3 8"
+		};
+		
+		for (String command : commands) {
+			parser.parse(command, consoleApp);
+			assertFalse(parser.hadError(), () -> "'" + command + "' failed: " + output);
+		}
+		
+		// Its threads are daemons, but there's no need to keep them.
+		consoleApp.getExecutor().shutdown();
+		
+		for (GAWrapper genotype : consoleApp.getPopulation()) {
+			output.append(genotype.asString()).append('\n');
+		}
+		
+		return output.toString();
+	}
+}
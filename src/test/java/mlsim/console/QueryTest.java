@@ -178,6 +178,12 @@ public class QueryTest {
 			assertThrows(ParseException.class, () -> query.consumeInt());
 		}
 		
+		@Test
+		@DisplayName("calling consumeLong() on a string should throw ParseException.")
+		public void consumeLongOnStringShouldThrowParseException() {
+			assertThrows(ParseException.class, () -> query.consumeLong());
+		}
+		
 		@Test
 		@DisplayName("consumeDouble() on a string should throw ParseException.")
 		public void consumeDoubleOnStringShouldThrowParseException() {
@@ -273,6 +279,12 @@ public class QueryTest {
 			assertEquals(query.consumeDouble(), (double)69);
 		}
 		
+		@Test
+		@DisplayName("calling consumeLong() should return the first integer (as long).")
+		public void callingConsumeLongShouldReturnFirstInteger() {
+			assertEquals(query.consumeLong(), 69L);
+		}
+		
 		/* Useless? */
 		
 		@Test
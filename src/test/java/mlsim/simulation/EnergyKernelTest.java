@@ -0,0 +1,58 @@
+package mlsim.simulation;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import mlsim.util.IntList;
+
+@DisplayName("The vector EnergyKernel")
+class EnergyKernelTest {
+	
+	@Test
+	@DisplayName("should leave the same food and find the same starved slots as the plain loop.")
+	public void shouldMatchTheScalarKernel() {
+		// Only there when built with -Pvector and run with the module.
+		EnergyKernel vector = EnergyKernel.create();
+		assumeFalse(vector instanceof ScalarEnergyKernel, "The vector kernel is not available.");
+		
+		EnergyKernel scalar = new ScalarEnergyKernel();
+		SplittableRandom random = new SplittableRandom(0);
+		
+		// Every size up to a few vectors, so most of them end with a part of one.
+		// The arrays are a bit longer, so the agents after size must stay untouched.
+		for (int size = 0; size <= 100; size++) {
+			int[] food = new int[size + 3],
+				  upkeep = new int[size + 3];
+			
+			for (int i = 0; i < food.length; i++) {
+				food[i] = random.nextInt(-2, 10);
+				upkeep[i] = random.nextInt(0, 4);
+			}
+			
+			int[] expectedFood = food.clone(),
+				  actualFood = food.clone();
+			IntList expected = new IntList(),
+					actual = new IntList();
+			
+			scalar.burn(expectedFood, upkeep, size, expected);
+			vector.burn(actualFood, upkeep, size, actual);
+			
+			assertArrayEquals(expectedFood, actualFood, "Food differs for " + size + " agents.");
+			assertArrayEquals(toArray(expected), toArray(actual), "Starved slots differ for " + size + " agents.");
+		}
+	}
+	
+	private static int[] toArray(IntList list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		
+		return array;
+	}
+}
@@ -0,0 +1,111 @@
+package mlsim.simulation;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import mlsim.wrapper.GAWrapper;
+
+@DisplayName("A ResultsAccumulator")
+public class ResultsAccumulatorTest {
+	// Only the number of genotypes matters.
+	private final List<GAWrapper> genotypes = Arrays.asList(null, null, null);
+	
+	// Fitness of the three genotypes in every simulation.
+	private final int[][] runs = {
+		{ 2, 0, 1_000_000 },
+		{ 4, 0, 3 },
+		{ 9, 0, 1_000_000 },
+		{ 1, 0, 7 },
+		{ 5, 0, 0 }
+	};
+	
+	/**
+	 *  Creates the results of a simulation with this fitness.
+	 */
+	private Results<GAWrapper> results(int... fitness) {
+		Results<GAWrapper> results = new Results<>(genotypes);
+		System.arraycopy(fitness, 0, results.fitness(), 0, fitness.length);
+		
+		return results;
+	}
+	
+	@Test
+	@DisplayName("without any results should have means and errors of 0.")
+	public void shouldBeZeroWhenEmpty() {
+		ResultsAccumulator accumulator = new ResultsAccumulator(genotypes);
+		
+		assertEquals(0, accumulator.runs());
+		assertArrayEquals(new double[3], accumulator.means());
+		assertEquals(0, accumulator.variance(0));
+		assertEquals(0, accumulator.standardError(0));
+	}
+	
+	@Test
+	@DisplayName("should count the runs and compute means and variances from the sums of scores and their squares.")
+	public void shouldComputeMeansAndVariances() {
+		ResultsAccumulator accumulator = new ResultsAccumulator(genotypes);
+		accumulator.add(results(2, 0, 1_000_000));
+		accumulator.add(results(4, 0, 1_000_000));
+		accumulator.add(results(9, 0, 1_000_000));
+		
+		assertEquals(3, accumulator.runs());
+		assertArrayEquals(new double[] { 5, 0, 1_000_000 }, accumulator.means());
+		
+		// Deviations 3, 1, 4.
+		assertEquals(13, accumulator.variance(0), 1e-9);
+		assertEquals(Math.sqrt(13 / 3.0), accumulator.standardError(0), 1e-9);
+		
+		// The same score every time. (and squares which don't fit in an int)
+		assertEquals(0, accumulator.variance(1));
+		assertEquals(0, accumulator.variance(2), 1e-9);
+	}
+	
+	@Test
+	@DisplayName("merged from parts should be the same as one with every result, in any order.")
+	public void shouldMergeInAnyOrder() {
+		ResultsAccumulator all = new ResultsAccumulator(genotypes);
+		for (int[] fitness : runs) {
+			all.add(results(fitness));
+		}
+		
+		// The same results, backwards and split in two.
+		ResultsAccumulator first = new ResultsAccumulator(genotypes),
+						   second = new ResultsAccumulator(genotypes);
+		for (int i = runs.length - 1; i >= 0; i--) {
+			(i % 2 == 0 ? first : second).add(results(runs[i]));
+		}
+		
+		ResultsAccumulator merged = new ResultsAccumulator(genotypes);
+		merged.merge(second);
+		merged.merge(first);
+		
+		second.merge(first);
+		
+		for (ResultsAccumulator accumulator : new ResultsAccumulator[] { merged, second }) {
+			assertEquals(all.runs(), accumulator.runs());
+			assertArrayEquals(all.means(), accumulator.means());
+			
+			for (int id = 0; id < genotypes.size(); id++) {
+				assertEquals(all.variance(id), accumulator.variance(id));
+				assertEquals(all.standardError(id), accumulator.standardError(id));
+			}
+		}
+	}
+	
+	@Test
+	@DisplayName("should not take results of a population of another size.")
+	public void shouldRefuseOtherPopulations() {
+		ResultsAccumulator accumulator = new ResultsAccumulator(genotypes),
+						   smaller = new ResultsAccumulator(genotypes.subList(0, 2));
+		
+		assertThrows(IllegalArgumentException.class, () -> accumulator.add(new Results<>(genotypes.subList(0, 2))));
+		assertThrows(IllegalArgumentException.class, () -> accumulator.merge(smaller));
+	}
+}
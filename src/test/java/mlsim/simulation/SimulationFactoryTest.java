@@ -1,8 +1,13 @@
 package mlsim.simulation;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
@@ -10,6 +15,9 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
+import mlsim.solution.GARandomFactory;
+import mlsim.wrapper.GAWrapper;
+
 @DisplayName("For a SimulationFactory")
 public class SimulationFactoryTest {
 	private SimulationFactory factory;
@@ -54,4 +62,97 @@ public class SimulationFactoryTest {
 		}
 		
 	}
+
+	@Nested
+	@DisplayName("with parameters 3, 3 and 2 agents")
+	class WithTinyPlane {
+		private final List<GAWrapper> agents = GARandomFactory.generatePopulation(1, 2, 2, GAWrapper.PRE, GAWrapper.POST, new SplittableRandom(0));
+
+		@Test
+		@DisplayName("and 3.5 food per agent should fill every cell.")
+		public void shouldFillEveryCell() {
+			factory = new SimulationFactory(3, 3, 3.5);
+			SimulationState state = factory.newSimulation(agents).getSimulationState();
+			
+			assertEquals(2, state.agents().size());
+			assertEquals(7, state.food().size());
+		}
+
+		@Test
+		@DisplayName("and 5 food per agent should throw IllegalArgumentException.")
+		public void shouldThrowWhenTheyDoNotFit() {
+			factory = new SimulationFactory(3, 3, 5);
+			
+			assertThrows(IllegalArgumentException.class, () -> factory.newSimulation(agents));
+		}
+
+		@Test
+		@DisplayName("and food regrowth should not let food grow on cells that have it.")
+		public void regrowthShouldNotDoubleFood() {
+			factory = new SimulationFactory(3, 3, 1);
+			factory.setFoodRegrowth(100);
+			
+			Simulation simulation = factory.newSimulation(agents, new SplittableRandom(0));
+			for (int i = 0; i < 5 && !simulation.ended(); i++) {
+				simulation.step();
+				assertTrue(simulation.getSimulationState().food().size() <= 9);
+			}
+		}
+
+		@Test
+		@DisplayName("and a step limit of 2 should end the simulation after at most 3 steps.")
+		public void stepLimitShouldEndSimulation() {
+			factory = new SimulationFactory(3, 3, 1);
+			factory.setMaxSteps(2);
+
+			Simulation simulation = factory.newSimulation(agents, new SplittableRandom(0));
+			for (int i = 0; i < 3; i++) {
+				simulation.step();
+			}
+
+			assertTrue(simulation.ended());
+			assertEquals(2, simulation.finish().fitness().length);
+		}
+
+		@Test
+		@DisplayName("and metrics on should count the death of every agent.")
+		public void metricsShouldCountEveryDeath() {
+			factory = new SimulationFactory(3, 3, 1);
+			assertEquals(null, factory.newSimulation(agents).getMetrics());
+			
+			factory.setMetrics(true);
+			
+			Simulation simulation = factory.newSimulation(agents, new SplittableRandom(0));
+			simulation.finish();
+			
+			SimulationMetrics metrics = simulation.getMetrics();
+			assertEquals(2, metrics.kills() + metrics.starvations() + metrics.leftBounds());
+			assertEquals(simulation.getSteps() - 1, metrics.steps());
+		}
+
+		@Test
+		@DisplayName("and agent statistics on should record how every agent died.")
+		public void statisticsShouldRecordEveryDeath() {
+			factory = new SimulationFactory(3, 3, 1);
+			assertEquals(null, factory.newSimulation(agents).finish().statistics());
+			
+			factory.setAgentStatistics(true);
+			factory.setMetrics(true);
+			
+			Simulation simulation = factory.newSimulation(agents, new SplittableRandom(0));
+			AgentStatistics statistics = simulation.finish().statistics();
+			
+			int kills = 0, killed = 0;
+			for (int id = 0; id < statistics.agents(); id++) {
+				assertNotNull(statistics.death(id));
+				kills += statistics.kills(id);
+				
+				if (statistics.death(id) == AgentStatistics.Death.KILLED)
+					killed++;
+			}
+			
+			assertEquals(killed, kills);
+			assertEquals(simulation.getMetrics().kills(), kills);
+		}
+	}
 }
@@ -2,12 +2,375 @@ package mlsim.simulation;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import mlsim.solution.GARandomFactory;
+import mlsim.solution.GeneticAlgorithm;
+import mlsim.wrapper.GAWrapper;
+
 @DisplayName("A new simulation")
 class SimulationTest {
+	private final List<GAWrapper> agents = GARandomFactory.generatePopulation(1, 4, 50, GAWrapper.PRE, GAWrapper.POST, new SplittableRandom(0));
+	
+	@Test
+	@DisplayName("should tell its listener about the death of every agent.")
+	public void shouldReportEveryDeath() {
+		for (StepMode mode : StepMode.values()) {
+			SimulationFactory factory = new SimulationFactory(20, 20, 1);
+			factory.setStepMode(mode);
+			
+			Simulation simulation = factory.newSimulation(agents, new SplittableRandom(1));
+			int[] deaths = new int[1];
+			
+			simulation.addListener(new SimulationListener() {
+				@Override
+				public void killed(int agent, int killer, int x, int y) { deaths[0]++; }
+				
+				@Override
+				public void starved(int agent, int x, int y) { deaths[0]++; }
+				
+				@Override
+				public void leftBounds(int agent, int x, int y) { deaths[0]++; }
+			});
+			
+			while (!simulation.ended()) {
+				simulation.step();
+			}
+			
+			assertEquals(agents.size(), deaths[0], mode.toString());
+		}
+	}
+
+	/**
+	 *  A test that is run once for every step mode. (see forEveryMode())
+	 */
+	private interface ModeTest<E extends Exception> {
+		void run(SimulationFactory factory, StepMode mode) throws E;
+	}
+	
+	/**
+	 *  Runs a test in every step mode, each time with a new factory
+	 *  for a small plane on which food grows back.
+	 */
+	private static <E extends Exception> void forEveryMode(ModeTest<E> test) throws E {
+		for (StepMode mode : StepMode.values()) {
+			SimulationFactory factory = new SimulationFactory(20, 20, 1);
+			factory.setStepMode(mode);
+			factory.setFoodRegrowth(0.5);
+			
+			test.run(factory, mode);
+		}
+	}
+	
+	@Test
+	@DisplayName("restored from a checkpoint should end the same way.")
+	public void shouldContinueTheSameAfterCheckpoint() throws IOException {
+		forEveryMode((factory, mode) -> {
+			for (CollisionBackend backend : new CollisionBackend[] { CollisionBackend.DENSE, CollisionBackend.SPARSE }) {
+				factory.setCollisionBackend(backend);
+			
+				Simulation simulation = factory.newSimulation(agents, new SplittableRandom(1));
+				for (int i = 0; i < 5; i++) {
+					simulation.step();
+				}
+				
+				Simulation restored = checkpointed(simulation);
+				
+				while (!simulation.ended()) {
+					simulation.step();
+					restored.step();
+				}
+				
+				assertTrue(restored.ended(), mode + ", " + backend);
+				assertArrayEquals(simulation.finish().fitness(), restored.finish().fitness(), mode + ", " + backend);
+			}
+		});
+	}
+
+	@Test
+	@DisplayName("restored from a checkpoint should keep its food per agent, macro-steps, metrics and statistics.")
+	public void shouldKeepParametersAfterCheckpoint() throws IOException {
+		SimulationFactory factory = new SimulationFactory(80, 80, 1.5);
+		factory.setMacroSteps(8);
+		factory.setMetrics(true);
+		factory.setAgentStatistics(true);
+		
+		Simulation simulation = factory.newSimulation(agents, new SplittableRandom(1));
+		for (int i = 0; i < 5; i++) {
+			simulation.step();
+		}
+		
+		Simulation restored = checkpointed(simulation);
+		long skipped = simulation.getMetrics().skipped();
+		assertArrayEquals(simulation.finish().fitness(), restored.finish().fitness());
+		
+		// Macro-steps under way are not saved, so the restored one may skip fewer moves.
+		SimulationMetrics expected = simulation.getMetrics(),
+						  actual = restored.getMetrics();
+		assertTrue(actual.skipped() > skipped, "No agent made a macro-step after the checkpoint.");
+		assertTrue(actual.skipped() <= expected.skipped());
+		assertEquals(expected.steps(), actual.steps());
+		assertEquals(expected.moves(), actual.moves());
+		assertEquals(expected.kills(), actual.kills());
+		assertEquals(expected.meals(), actual.meals());
+		assertEquals(expected.starvations(), actual.starvations());
+		assertEquals(expected.leftBounds(), actual.leftBounds());
+		
+		AgentStatistics before = simulation.getResults().statistics(),
+						after = restored.getResults().statistics();
+		for (int id = 0; id < agents.size(); id++) {
+			assertEquals(before.meals(id), after.meals(id));
+			assertEquals(before.kills(id), after.kills(id));
+			assertEquals(before.distance(id), after.distance(id));
+			assertEquals(before.randomMoves(id), after.randomMoves(id));
+			assertEquals(before.death(id), after.death(id));
+		}
+		
+		// Food is placed again by the food per agent.
+		simulation.reset(agents, new SplittableRandom(3));
+		restored.reset(agents, new SplittableRandom(3));
+		assertArrayEquals(simulation.finish().fitness(), restored.finish().fitness());
+	}
+	
+	/**
+	 *  Writes a simulation to a checkpoint and restores it.
+	 */
+	private Simulation checkpointed(Simulation simulation) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		simulation.writeTo(new DataOutputStream(bytes));
+		
+		return Simulation.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), agents);
+	}
+
+	@Test
+	@DisplayName("reset with new genotypes should end the same way as a new one.")
+	public void shouldResetToTheSameSimulation() {
+		List<GAWrapper> others = GARandomFactory.generatePopulation(1, 4, 40, GAWrapper.PRE, GAWrapper.POST, new SplittableRandom(2));
+		
+		forEveryMode((factory, mode) -> {
+			Simulation reused = factory.newSimulation(agents, new SplittableRandom(1));
+			for (int i = 0; i < 5; i++) {
+				reused.step();
+			}
+			
+			reused.reset(others, new SplittableRandom(3));
+			Simulation fresh = factory.newSimulation(others, new SplittableRandom(3));
+			
+			assertArrayEquals(fresh.finish().fitness(), reused.finish().fitness(), mode.toString());
+			assertEquals(fresh.getSteps(), reused.getSteps(), mode.toString());
+		});
+	}
+	
+	@Test
+	@DisplayName("replayed from a recording should end the same way.")
+	public void shouldReplayTheSame() {
+		forEveryMode((factory, mode) -> {
+			Simulation simulation = factory.newSimulation(agents, new SplittableRandom(1));
+			Recorder recorder = new Recorder(simulation);
+			
+			while (!simulation.ended()) {
+				simulation.step();
+			}
+			
+			Replay replay = new Replay(recorder.getRecording());
+			replay.seek(Integer.MAX_VALUE);
+			
+			assertEquals(simulation.getSteps(), replay.getSimulation().getSteps(), mode.toString());
+			assertArrayEquals(simulation.finish().fitness(), replay.getSimulation().finish().fitness(), mode.toString());
+		});
+	}
+	
+	@Test
+	@DisplayName("made from a layout should end the same way as one made with the layout's random numbers.")
+	public void shouldStartTheSameFromLayout() {
+		forEveryMode((factory, mode) -> {
+			factory.setLayouts(3, agents.size(), new SplittableRandom(7));
+			
+			// Layouts take one number each, like simulations.
+			SplittableRandom random = new SplittableRandom(7);
+			Simulation reused = factory.newSimulation(agents, new SplittableRandom(1));
+			
+			for (Layout layout : factory.getLayouts()) {
+				Simulation expected = factory.newSimulation(agents, random);
+				Simulation fresh = factory.newSimulation(agents, layout);
+				reused.reset(agents, layout);
+				
+				int[] fitness = expected.finish().fitness();
+				assertArrayEquals(fitness, fresh.finish().fitness(), mode.toString());
+				assertArrayEquals(fitness, reused.finish().fitness(), mode.toString());
+				assertEquals(expected.getSteps(), reused.getSteps(), mode.toString());
+			}
+		});
+	}
+	
+	@Test
+	@DisplayName("with macro-steps should end the same way as without.")
+	public void shouldEndTheSameWithMacroSteps() {
+		SimulationFactory deciding = new SimulationFactory(80, 80, 0.5),
+						  skipping = new SimulationFactory(80, 80, 0.5);
+		deciding.setFoodRegrowth(2);
+		skipping.setFoodRegrowth(2);
+		skipping.setMacroSteps(8);
+		skipping.setMetrics(true);
+
+		long skipped = 0;
+		for (int seed = 0; seed < 5; seed++) {
+			Simulation simulation = deciding.newSimulation(agents, new SplittableRandom(seed)),
+					   macro = skipping.newSimulation(agents, new SplittableRandom(seed));
+
+			assertArrayEquals(simulation.finish().fitness(), macro.finish().fitness());
+			assertEquals(simulation.getSteps(), macro.getSteps());
+
+			skipped += macro.getMetrics().skipped();
+		}
+
+		assertTrue(skipped > 0, "No agent made a macro-step.");
+	}
+
+	@Test
+	@DisplayName("with cycle detection should not stop an agent walking randomly.")
+	public void shouldNotStopRandomWalk() {
+		// No rule ever matches, so it always moves randomly.
+		List<GAWrapper> walker = List.of(new GAWrapper(new GeneticAlgorithm(new boolean[0], GAWrapper.PRE + GAWrapper.POST, GAWrapper.PRE)));
+		
+		for (StepMode mode : StepMode.values()) {
+			SimulationFactory plain = new SimulationFactory(40, 40, 0),
+							  detecting = new SimulationFactory(40, 40, 0);
+			plain.setStepMode(mode);
+			detecting.setStepMode(mode);
+			detecting.setCycleDetection(true);
+			
+			for (int seed = 0; seed < 5; seed++) {
+				Simulation simulation = plain.newSimulation(walker, new SplittableRandom(seed)),
+						   detected = detecting.newSimulation(walker, new SplittableRandom(seed));
+				
+				assertArrayEquals(simulation.finish().fitness(), detected.finish().fitness(), mode.toString());
+				assertEquals(simulation.getSteps(), detected.getSteps(), mode.toString());
+			}
+		}
+	}
+	
+	@Test
+	@DisplayName("should count an agent stepped on after it starved as starved, not killed.")
+	public void shouldNotKillStarvedAgents() {
+		SimulationFactory factory = new SimulationFactory(100, 1, 0);
+		factory.setAgentStatistics(true);
+		
+		// Both rules always match: the first agent walks east, the second west.
+		List<GAWrapper> walkers = List.of(walker(true, true), walker(true, false));
+		
+		// Looks for a layout where they start 60 cells apart, so they meet on the
+		// step they starve, after the first one has moved.
+		Layout layout = null;
+		for (int seed = 0; layout == null; seed++) {
+			factory.setLayouts(1, walkers.size(), new SplittableRandom(seed));
+			Layout candidate = factory.getLayouts().get(0);
+			
+			if (candidate.cells[1] - candidate.cells[0] == 60) {
+				layout = candidate;
+			}
+		}
+		
+		Simulation simulation = factory.newSimulation(walkers, layout);
+		simulation.finish();
+		
+		AgentStatistics statistics = simulation.getResults().statistics();
+		assertEquals(AgentStatistics.Death.STARVED, statistics.death(0));
+		assertEquals(AgentStatistics.Death.STARVED, statistics.death(1));
+		assertEquals(0, statistics.kills(1));
+		assertEquals(30, statistics.distance(0));
+		assertEquals(30, statistics.distance(1));
+	}
+	
+	private static GAWrapper walker(boolean... move) {
+		boolean[] code = new boolean[GAWrapper.PRE + GAWrapper.POST];
+		Arrays.fill(code, 0, GAWrapper.PRE, true);
+		System.arraycopy(move, 0, code, GAWrapper.PRE, GAWrapper.POST);
+		
+		return new GAWrapper(new GeneticAlgorithm(code, code.length, GAWrapper.PRE));
+	}
+	
+	@Test
+	@DisplayName("with the sparse collision backend should end the same way as with the dense one.")
+	public void shouldEndTheSameWhenSparse() {
+		for (StepMode mode : StepMode.values()) {
+			SimulationFactory dense = new SimulationFactory(30, 30, 0.5),
+							  sparse = new SimulationFactory(30, 30, 0.5);
+			dense.setStepMode(mode);
+			sparse.setStepMode(mode);
+			dense.setCollisionBackend(CollisionBackend.DENSE);
+			sparse.setCollisionBackend(CollisionBackend.SPARSE);
+			
+			for (int seed = 0; seed < 5; seed++) {
+				Simulation simulation = dense.newSimulation(agents, new SplittableRandom(seed)),
+						   sorted = sparse.newSimulation(agents, new SplittableRandom(seed));
+				
+				assertArrayEquals(simulation.finish().fitness(), sorted.finish().fitness(), mode.toString());
+				assertEquals(simulation.getSteps(), sorted.getSteps(), mode.toString());
+			}
+		}
+	}
 
+	@Test
+	@DisplayName("in simultaneous mode should end the same way no matter how many threads step it.")
+	public void shouldEndTheSameWithMoreThreads() throws Exception {
+		SimulationFactory factory = new SimulationFactory(64, 41, 1);
+		factory.setStepMode(StepMode.SIMULTANEOUS);
+		factory.setShards(8);
+		factory.setFoodRegrowth(2);
+		
+		// Parallel steps run in the pool of the thread that calls them.
+		ForkJoinPool one = new ForkJoinPool(1),
+					 many = new ForkJoinPool(8);
+		try {
+			Simulation alone = factory.newSimulation(agents, new SplittableRandom(5)),
+					   together = factory.newSimulation(agents, new SplittableRandom(5));
+			
+			int[] fitness = one.submit(() -> alone.finish().fitness()).get();
+			assertArrayEquals(fitness, many.submit(() -> together.finish().fitness()).get());
+			assertEquals(alone.getSteps(), together.getSteps());
+		} finally {
+			one.shutdown();
+			many.shutdown();
+		}
+	}
 	
+	@Test
+	@DisplayName("cut into more shards should end the same way as with one.")
+	public void shouldEndTheSameWithMoreShards() {
+		int[][] planes = { { 37, 37 }, { 64, 41 }, { 130, 53 } };
 
+		for (int[] plane : planes) {
+			for (double regrowth : new double[] { 0, 2 }) {
+				SimulationFactory factory = new SimulationFactory(plane[0], plane[1], 1);
+				factory.setStepMode(StepMode.SIMULTANEOUS);
+				factory.setCollisionBackend(CollisionBackend.DENSE);
+				factory.setFoodRegrowth(regrowth);
+				factory.setShards(1);
+				
+				Simulation single = factory.newSimulation(agents, new SplittableRandom(5));
+				int[] fitness = single.finish().fitness();
+				
+				for (int shards : new int[] { 2, 3, 7, 16 }) {
+					factory.setShards(shards);
+					String message = plane[0] + "x" + plane[1] + ", regrowth " + regrowth + ", " + shards + " shards";
+					
+					Simulation sharded = factory.newSimulation(agents, new SplittableRandom(5));
+					assertArrayEquals(fitness, sharded.finish().fitness(), message);
+					assertEquals(single.getSteps(), sharded.getSteps(), message);
+				}
+			}
+		}
+	}
 }
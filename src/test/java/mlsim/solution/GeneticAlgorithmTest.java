@@ -4,6 +4,8 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.SplittableRandom;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.DisplayName;
@@ -15,6 +17,7 @@ import mlsim.util.Tuple;
 @DisplayName("A genetic algorithm")
 public class GeneticAlgorithmTest {
 	GeneticAlgorithm ga;
+	SplittableRandom rand = new SplittableRandom(0);
 	
 	@Nested
 	@DisplayName("given a bit string = '110101', rule size = 3 and precondition = 2")
@@ -49,7 +52,7 @@ public class GeneticAlgorithmTest {
 			
 			@BeforeEach
 			public void mutateCall() {
-				mutated = ga.mutate();
+				mutated = ga.mutate(rand);
 			}
 			
 			@Disabled
@@ -75,7 +78,7 @@ public class GeneticAlgorithmTest {
 			public void callingCrossoverAndAssignment() {
 				other = new GeneticAlgorithm(sToBa("101110011"), 3, 1);
 				
-				Tuple<GeneticAlgorithm, GeneticAlgorithm> tuple = ga.crossover(other);
+				Tuple<GeneticAlgorithm, GeneticAlgorithm> tuple = ga.crossover(other, rand);
 				
 				co1 = tuple.first();
 				co2 = tuple.second();
@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 
 import java.util.List;
+import java.util.random.RandomGenerator;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -159,12 +160,12 @@ public class WrapperTest {
 	private class MockWrapper extends Wrapper<MockWrapper> {
 
 		@Override
-		public MockWrapper mutate() {
+		public MockWrapper mutate(RandomGenerator rand) {
 			return new MockWrapper();
 		}
 
 		@Override
-		public Tuple<MockWrapper, MockWrapper> crossover(MockWrapper other) {
+		public Tuple<MockWrapper, MockWrapper> crossover(MockWrapper other, RandomGenerator rand) {
 			return new Tuple<MockWrapper, MockWrapper>(new MockWrapper(), new MockWrapper());
 		}
 
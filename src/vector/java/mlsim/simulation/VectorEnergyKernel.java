@@ -0,0 +1,56 @@
+package mlsim.simulation;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import mlsim.util.IntList;
+
+/**
+ * VectorEnergyKernel is the EnergyKernel written with the Vector API.
+ * It handles as many agents at once as fit in the widest vector register.
+ * Starved agents are rare, so their slots are only looked for
+ * in the (few) vectors that have any.
+ * 
+ * Only created through EnergyKernel.create().
+ * 
+ * @author bingis_khan
+ *
+ */
+class VectorEnergyKernel implements EnergyKernel {
+	private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+	
+	VectorEnergyKernel() {
+		// Without real vectors, the plain loop is faster.
+		if (SPECIES.length() < 4) {
+			throw new UnsupportedOperationException("Vectors of " + SPECIES.length() + " ints are too short.");
+		}
+	}
+	
+	@Override
+	public void burn(int[] food, int[] upkeep, int size, IntList starved) {
+		int slot = 0;
+		
+		for (int bound = SPECIES.loopBound(size); slot < bound; slot += SPECIES.length()) {
+			IntVector left = IntVector.fromArray(SPECIES, food, slot)
+									  .sub(IntVector.fromArray(SPECIES, upkeep, slot));
+			left.intoArray(food, slot);
+			
+			VectorMask<Integer> empty = left.compare(VectorOperators.LE, 0);
+			if (empty.anyTrue()) {
+				for (long lanes = empty.toLong(); lanes != 0; lanes &= lanes - 1) {
+					starved.add(slot + Long.numberOfTrailingZeros(lanes));
+				}
+			}
+		}
+		
+		// The rest, which does not fill a whole vector.
+		for (; slot < size; slot++) {
+			food[slot] -= upkeep[slot];
+			
+			if (food[slot] <= 0) {
+				starved.add(slot);
+			}
+		}
+	}
+}